@@ -0,0 +1,105 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps a copy of the first bytes read, for error reporting, and fails once more than a maximum number of bytes are read.
+ */
+class CapturingInputStream extends FilterInputStream {
+
+    private final byte[] capture;
+    private final long maxSize;
+    private int captured;
+    private long count;
+
+    CapturingInputStream(InputStream in, int captureLimit, long maxSize) {
+        super(in);
+        this.capture = new byte[captureLimit];
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            onRead(new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            onRead(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        checkSize();
+        return skipped;
+    }
+
+    private void onRead(byte[] b, int off, int len) throws IOException {
+        int toCapture = Math.min(len, capture.length - captured);
+        if (toCapture > 0) {
+            System.arraycopy(b, off, capture, captured, toCapture);
+            captured += toCapture;
+        }
+        count += len;
+        checkSize();
+    }
+
+    private void checkSize() throws BodyTooLargeException {
+        if (count > maxSize) {
+            throw new BodyTooLargeException(maxSize);
+        }
+    }
+
+    /**
+     * Reads what is still needed to fill the capture, so that the excerpt does not stop where parsing did,
+     * and a byte more, so that a truncated excerpt is told apart from a whole body.
+     */
+    void fillCapture() {
+        byte[] buffer = new byte[Math.max(1, capture.length - captured)];
+        try {
+            while (captured < capture.length && read(buffer, 0, capture.length - captured) != -1) {
+                // Captured by read
+            }
+            if (count == captured) {
+                read();
+            }
+        } catch (IOException e) {
+            // Keep what was captured so far
+        }
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    long count() {
+        return count;
+    }
+
+    /**
+     * @return the captured bytes as text, with a mention of the truncation if the body was longer
+     */
+    String capturedText() {
+        String text = new String(Arrays.copyOf(capture, captured), StandardCharsets.UTF_8);
+        return count > captured ? text + "\n[... truncated after " + captured + " bytes]" : text;
+    }
+
+    static class BodyTooLargeException extends IOException {
+        BodyTooLargeException(long maxSize) {
+            super("Response body exceeds " + maxSize + " bytes");
+        }
+    }
+}
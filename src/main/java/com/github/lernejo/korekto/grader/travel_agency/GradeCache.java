@@ -0,0 +1,406 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Grades of previous gradings, reused when the repository HEAD, the grader version and its configuration did not change.
+ * <p>
+ * Enabled by setting `-DGRADE_CACHE_DIR`, where two files are kept:
+ * <ul>
+ *     <li>`grades.dat`, where each grading is appended as a JSON record</li>
+ *     <li>`grades.idx`, a memory-mapped open-addressing hash table of `-DGRADE_CACHE_CAPACITY` slots (65 536 by default) pointing to these records</li>
+ * </ul>
+ * With `-DGRADE_CACHE=bypass`, the cache is not read, but still refreshed with new grades.
+ * <p>
+ * Parts depending on a single module are also stored by themselves, keyed by the content of this module and of the modules it depends on,
+ * so that they can be reused when another commit left them unchanged.
+ * Parts depending on the whole build are keyed by the content of all the modules.
+ * The random draws of such parts are stored along with them, so that a reused part makes them again
+ * and the next parts draw what they would have after a full grading, see {@link GradingRandomSource}.
+ * <p>
+ * The configuration fingerprint covers all the upper-case system properties, which is how the grader is configured (seeds included).
+ * The grader version is `-DGRADE_CACHE_VERSION`, or else a digest of the grader jar or classes directory, the cache being disabled when neither is available.
+ * Gradings which met a transient failure, such as a server not started in time, are not stored.
+ */
+class GradeCache {
+
+    /**
+     * Module name of the parts depending on the whole build.
+     */
+    static final String ALL_MODULES = "*";
+
+    private static final Logger logger = LoggerFactory.getLogger(GradeCache.class);
+
+    private static final int MAGIC = 0x4B474331;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 24;
+
+    private final boolean bypass;
+    private final String graderVersion;
+    private final String configurationFingerprint;
+    private final FileChannel data;
+    private final MappedByteBuffer index;
+    private final int capacity;
+    private int count;
+
+    private GradeCache(Path directory, int requestedCapacity, boolean bypass, String graderVersion) throws IOException {
+        this.bypass = bypass;
+        this.graderVersion = graderVersion;
+        this.configurationFingerprint = configurationFingerprint();
+        Files.createDirectories(directory);
+        Path indexPath = directory.resolve("grades.idx");
+        int existingCapacity = readCapacity(indexPath);
+        this.capacity = existingCapacity > 0 ? existingCapacity : Integer.highestOneBit(Math.max(16, requestedCapacity - 1) << 1);
+        try (FileChannel indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        }
+        if (existingCapacity == 0) {
+            index.putInt(0, MAGIC);
+            index.putInt(4, capacity);
+            index.putInt(8, 0);
+        }
+        this.count = index.getInt(8);
+        this.data = FileChannel.open(directory.resolve("grades.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return the cache configured by system properties, or null if not enabled
+     */
+    static GradeCache fromSystemProperties() {
+        String directory = System.getProperty("GRADE_CACHE_DIR");
+        if (directory == null) {
+            return null;
+        }
+        Optional<String> graderVersion = graderVersion();
+        if (graderVersion.isEmpty()) {
+            logger.warn("Grade cache disabled, unable to tell the grader version, set it with -DGRADE_CACHE_VERSION");
+            return null;
+        }
+        try {
+            return new GradeCache(
+                Path.of(directory),
+                Integer.parseInt(System.getProperty("GRADE_CACHE_CAPACITY", "65536")),
+                "bypass".equalsIgnoreCase(System.getProperty("GRADE_CACHE", "")),
+                graderVersion.get());
+        } catch (IOException e) {
+            logger.warn("Grade cache disabled, unable to open it in " + directory + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the key of the current state of the exercise, empty if its HEAD commit cannot be resolved
+     */
+    Optional<String> keyOf(Path exerciseRoot) {
+        return headCommit(exerciseRoot).map(commit -> String.join("\n", exerciseRoot.toAbsolutePath().toString(), commit, graderVersion, configurationFingerprint));
+    }
+
+    /**
+     * @param module a module of the exercise, or {@link #ALL_MODULES}
+     * @return the key of the current state of the given module and of the modules it depends on, of the parent POM and of the part
+     */
+    Optional<String> moduleKeyOf(Path exerciseRoot, String module, String partName) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digestFile(digest, exerciseRoot, exerciseRoot.resolve("pom.xml"));
+            ModuleGraph moduleGraph = ModuleGraph.of(exerciseRoot);
+            Set<String> modules = ALL_MODULES.equals(module) ? moduleGraph.modules() : moduleGraph.withDependencies(module);
+            if (ALL_MODULES.equals(module)) {
+                digestDirectory(digest, exerciseRoot, exerciseRoot.resolve(".mvn"));
+            }
+            for (String digestedModule : modules) {
+                Path modulePath = exerciseRoot.resolve(digestedModule);
+                digestFile(digest, exerciseRoot, modulePath.resolve("pom.xml"));
+                digestDirectory(digest, exerciseRoot, modulePath.resolve("src"));
+            }
+            String moduleFingerprint = HexFormat.of().formatHex(digest.digest());
+            return Optional.of(String.join("\n", exerciseRoot.toAbsolutePath().toString(), module, moduleFingerprint, partName, graderVersion, configurationFingerprint));
+        } catch (IOException | UncheckedIOException e) {
+            return Optional.empty();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    synchronized Optional<List<GradePart>> lookup(String key) {
+        return findEntry(key).map(entry -> entry.parts().stream().map(CachedPart::toGradePart).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the part stored with {@link #storePart(String, GradePart, List)}
+     */
+    synchronized Optional<ReusedPart> lookupPart(String key) {
+        return findEntry(key)
+            .filter(entry -> entry.parts().size() == 1)
+            .map(entry -> {
+                CachedPart part = entry.parts().get(0);
+                boolean perfect = part.grade() != null && part.maxGrade() != null && part.grade() >= part.maxGrade();
+                return new ReusedPart(part.toGradePart(), perfect, entry.randomDraws() != null ? entry.randomDraws() : List.of());
+            });
+    }
+
+    /**
+     * @param randomDraws the draws the part made, see {@link RecordingRandomSupplier#draws()}
+     */
+    void storePart(String key, GradePart part, List<Integer> randomDraws) {
+        store(key, List.of(part), randomDraws);
+    }
+
+    private Optional<Entry> findEntry(String key) {
+        if (bypass) {
+            return Optional.empty();
+        }
+        long hash = hash(key);
+        for (int probe = 0, slot = slotOf(hash); probe < capacity; probe++, slot = (slot + 1) & (capacity - 1)) {
+            long slotHash = index.getLong(slotOffset(slot));
+            if (slotHash == 0L) {
+                return Optional.empty();
+            }
+            if (slotHash == hash) {
+                Entry entry = readEntry(slot);
+                if (entry != null && key.equals(entry.key())) {
+                    return Optional.of(entry);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    void store(String key, Collection<? extends GradePart> parts) {
+        store(key, parts, null);
+    }
+
+    private synchronized void store(String key, Collection<? extends GradePart> parts, List<Integer> randomDraws) {
+        long hash = hash(key);
+        int slot = slotOf(hash);
+        for (int probe = 0; probe < capacity; probe++, slot = (slot + 1) & (capacity - 1)) {
+            long slotHash = index.getLong(slotOffset(slot));
+            if (slotHash == 0L) {
+                if ((count + 1) * 4L > capacity * 3L) {
+                    logger.warn("Grade cache is full, raise GRADE_CACHE_CAPACITY and clear GRADE_CACHE_DIR");
+                    return;
+                }
+                count++;
+                index.putInt(8, count);
+                break;
+            }
+            if (slotHash == hash) {
+                Entry entry = readEntry(slot);
+                if (entry != null && key.equals(entry.key())) {
+                    break;
+                }
+            }
+        }
+        try {
+            List<CachedPart> cachedParts = parts.stream().map(CachedPart::of).collect(Collectors.toList());
+            byte[] record = LaunchingContext.OBJECT_MAPPER.writeValueAsBytes(new Entry(key, cachedParts, randomDraws));
+            long offset = data.size();
+            data.write(ByteBuffer.wrap(record), offset);
+            int slotOffset = slotOffset(slot);
+            index.putLong(slotOffset + 8, offset);
+            index.putInt(slotOffset + 16, record.length);
+            // Written last, so that an interrupted store leaves the slot as it was
+            index.putLong(slotOffset, hash);
+        } catch (IOException e) {
+            logger.warn("Unable to store grades in cache: " + e.getMessage());
+        }
+    }
+
+    private Entry readEntry(int slot) {
+        int slotOffset = slotOffset(slot);
+        long offset = index.getLong(slotOffset + 8);
+        int length = index.getInt(slotOffset + 16);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining() && data.read(buffer, offset + buffer.position()) >= 0) {
+                // Reading until the record is complete
+            }
+            return LaunchingContext.OBJECT_MAPPER.readValue(buffer.array(), Entry.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private int slotOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return a non-zero hash, 0 marking empty slots
+     */
+    private static long hash(String key) {
+        long hash = ByteBuffer.wrap(sha256(key.getBytes(StandardCharsets.UTF_8))).getLong();
+        return hash == 0L ? 1L : hash;
+    }
+
+    /**
+     * @return the configured version, or else the digest of the jar or directory the grader classes are loaded from
+     */
+    private static Optional<String> graderVersion() {
+        String configuredVersion = System.getProperty("GRADE_CACHE_VERSION");
+        if (configuredVersion != null) {
+            return Optional.of(configuredVersion);
+        }
+        try {
+            CodeSource codeSource = GradeCache.class.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                return Optional.empty();
+            }
+            Path location = Path.of(codeSource.getLocation().toURI());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (Files.isDirectory(location)) {
+                try (var files = Files.walk(location)) {
+                    for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                        digestFile(digest, location, file);
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return Optional.of(HexFormat.of().formatHex(digest.digest()));
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return Optional.empty();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void digestDirectory(MessageDigest digest, Path root, Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            try (var files = Files.walk(directory)) {
+                for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                    digestFile(digest, root, file);
+                }
+            }
+        }
+    }
+
+    private static void digestFile(MessageDigest digest, Path root, Path file) throws IOException {
+        digest.update(root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        if (Files.exists(file)) {
+            digest.update(Files.readAllBytes(file));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static int readCapacity(Path indexPath) throws IOException {
+        if (!Files.exists(indexPath) || Files.size(indexPath) < HEADER_SIZE) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(indexPath + " is not a grade cache index");
+            }
+            return header.getInt(4);
+        }
+    }
+
+    /**
+     * Reads the HEAD commit from the `.git` directory, following a symbolic ref to a loose or packed ref.
+     */
+    static Optional<String> headCommit(Path exerciseRoot) {
+        Path gitDirectory = exerciseRoot.resolve(".git");
+        try {
+            String head = Files.readString(gitDirectory.resolve("HEAD")).trim();
+            if (!head.startsWith("ref:")) {
+                return Optional.of(head);
+            }
+            String ref = head.substring("ref:".length()).trim();
+            Path looseRef = gitDirectory.resolve(ref);
+            if (Files.exists(looseRef)) {
+                return Optional.of(Files.readString(looseRef).trim());
+            }
+            Path packedRefs = gitDirectory.resolve("packed-refs");
+            if (Files.exists(packedRefs)) {
+                try (var lines = Files.lines(packedRefs)) {
+                    return lines
+                        .filter(line -> line.endsWith(" " + ref))
+                        .map(line -> line.substring(0, line.indexOf(' ')))
+                        .findFirst();
+                }
+            }
+            return Optional.empty();
+        } catch (IOException | UncheckedIOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String configurationFingerprint() {
+        TreeMap<String, String> configuration = new TreeMap<>();
+        System.getProperties().forEach((key, value) -> {
+            String name = key.toString();
+            if (name.matches("[A-Z][A-Z0-9_]*") && !name.startsWith("GRADE_CACHE")) {
+                configuration.put(name, value.toString());
+            }
+        });
+        return HexFormat.of().formatHex(sha256(configuration.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] sha256(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param randomDraws draws of a part stored by itself, null for whole gradings
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record Entry(String key, List<CachedPart> parts, List<Integer> randomDraws) {
+    }
+
+    /**
+     * @param perfect     whether the part got its maximum grade
+     * @param randomDraws draws the part made when graded
+     */
+    record ReusedPart(GradePart part, boolean perfect, List<Integer> randomDraws) {
+    }
+
+    /**
+     * Jackson view of a {@link GradePart}.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record CachedPart(String id, Double grade, Double maxGrade, List<String> comments) {
+
+        static CachedPart of(GradePart part) {
+            return LaunchingContext.OBJECT_MAPPER.convertValue(part, CachedPart.class);
+        }
+
+        GradePart toGradePart() {
+            return new GradePart(id, grade, maxGrade, comments);
+        }
+    }
+}
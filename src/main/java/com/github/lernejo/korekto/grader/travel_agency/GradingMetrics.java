@@ -0,0 +1,243 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Durations of the grading phases, aggregated in histograms by phase and part across all the exercises graded in the JVM.
+ * <p>
+ * The part is the one graded by the current thread, HTTP calls being attributed to the part which created them, even when run asynchronously.
+ * Tasks a part submits to its own threads keep its attribution through {@link #inCurrentPart(Runnable)}.
+ * With `-DMETRICS_DIR`, histograms are written after each graded exercise, as `grading-metrics.json` and as `grading-metrics.prom` in the Prometheus text format.
+ */
+public class GradingMetrics {
+
+    public static final GradingMetrics INSTANCE = new GradingMetrics();
+
+    private static final Logger logger = LoggerFactory.getLogger(GradingMetrics.class);
+    private static final String NO_PART = "none";
+    private static final double[] BUCKET_UPPER_BOUNDS_SECONDS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600};
+
+    private final ThreadLocal<String> currentPart = new ThreadLocal<>();
+    private final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+    private final String metricsDir = System.getProperty("METRICS_DIR");
+
+    public enum Phase {
+        PART,
+        MAVEN_BUILD,
+        SERVER_BOOT,
+        READINESS_WAIT,
+        HTTP_CALL,
+        PORT_RELEASE;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Attributes the phases run by the current thread to the given part, and records the duration of the part itself.
+     */
+    <T> T withinPart(String part, Supplier<T> grading) {
+        return attributedTo(part, () -> time(Phase.PART, grading));
+    }
+
+    /**
+     * @return the given task, attributing the phases it runs to the part graded by the current thread, whichever thread runs it
+     */
+    public Runnable inCurrentPart(Runnable task) {
+        String part = currentPart.get();
+        if (part == null) {
+            return task;
+        }
+        return () -> attributedTo(part, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private <T> T attributedTo(String part, Supplier<T> action) {
+        String previousPart = currentPart.get();
+        currentPart.set(part);
+        try {
+            return action.get();
+        } finally {
+            if (previousPart == null) {
+                currentPart.remove();
+            } else {
+                currentPart.set(previousPart);
+            }
+        }
+    }
+
+    public <T> T time(Phase phase, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    public void timeRun(Phase phase, Runnable action) {
+        time(phase, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Times an action run outside of the given part, such as the stop of a server it started, as if it were run within.
+     */
+    public void timeRun(Phase phase, String part, Runnable action) {
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            record(phase, part, System.nanoTime() - start);
+        }
+    }
+
+    public void record(Phase phase, long durationNanos) {
+        record(phase, currentPart(), durationNanos);
+    }
+
+    private void record(Phase phase, String part, long durationNanos) {
+        histograms.computeIfAbsent(new Key(phase, part), k -> new Histogram()).record(durationNanos);
+    }
+
+    public String currentPart() {
+        String part = currentPart.get();
+        return part != null ? part : NO_PART;
+    }
+
+    /**
+     * Records the duration of each HTTP call, from its start to the end of its response body.
+     */
+    EventListener.Factory httpCallListenerFactory() {
+        return call -> {
+            String part = currentPart();
+            return new EventListener() {
+                private long start;
+
+                @Override
+                public void callStart(Call call) {
+                    start = System.nanoTime();
+                }
+
+                @Override
+                public void callEnd(Call call) {
+                    record(Phase.HTTP_CALL, part, System.nanoTime() - start);
+                }
+
+                @Override
+                public void callFailed(Call call, IOException ioe) {
+                    record(Phase.HTTP_CALL, part, System.nanoTime() - start);
+                }
+            };
+        };
+    }
+
+    /**
+     * Writes the histograms of all the exercises graded so far, if `-DMETRICS_DIR` is set.
+     */
+    public void exportIfConfigured() {
+        if (metricsDir != null) {
+            export(Path.of(metricsDir));
+        }
+    }
+
+    synchronized void export(Path directory) {
+        List<Map.Entry<Key, Histogram>> sorted = new ArrayList<>(histograms.entrySet());
+        sorted.sort(Map.Entry.comparingByKey(Comparator.comparing(Key::phase).thenComparing(Key::part)));
+        try {
+            Files.createDirectories(directory);
+            List<HistogramSnapshot> snapshots = sorted.stream().map(e -> e.getValue().snapshot(e.getKey())).toList();
+            LaunchingContext.OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(directory.resolve("grading-metrics.json").toFile(), snapshots);
+            Files.writeString(directory.resolve("grading-metrics.prom"), toPrometheusText(snapshots), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Unable to export grading metrics to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static String toPrometheusText(List<HistogramSnapshot> snapshots) {
+        String name = "travel_agency_grading_phase_duration_seconds";
+        StringBuilder text = new StringBuilder()
+            .append("# HELP ").append(name).append(" Duration of grading phases, by part\n")
+            .append("# TYPE ").append(name).append(" histogram\n");
+        for (HistogramSnapshot snapshot : snapshots) {
+            String labels = "phase=\"" + snapshot.phase() + "\",part=\"" + escapeLabelValue(snapshot.part()) + "\"";
+            long cumulativeCount = 0;
+            for (int i = 0; i < BUCKET_UPPER_BOUNDS_SECONDS.length; i++) {
+                cumulativeCount += snapshot.bucketCounts()[i];
+                text.append(name).append("_bucket{").append(labels).append(",le=\"").append(BUCKET_UPPER_BOUNDS_SECONDS[i]).append("\"} ").append(cumulativeCount).append('\n');
+            }
+            text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(snapshot.count()).append('\n');
+            text.append(name).append("_sum{").append(labels).append("} ").append(snapshot.sumSeconds()).append('\n');
+            text.append(name).append("_count{").append(labels).append("} ").append(snapshot.count()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private record Key(Phase phase, String part) {
+    }
+
+    private static class Histogram {
+        private final LongAdder[] bucketCounts = new LongAdder[BUCKET_UPPER_BOUNDS_SECONDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Histogram() {
+            for (int i = 0; i < bucketCounts.length; i++) {
+                bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        void record(long durationNanos) {
+            double seconds = durationNanos / 1_000_000_000D;
+            int bucket = 0;
+            while (bucket < BUCKET_UPPER_BOUNDS_SECONDS.length && seconds > BUCKET_UPPER_BOUNDS_SECONDS[bucket]) {
+                bucket++;
+            }
+            bucketCounts[bucket].increment();
+            count.increment();
+            sumNanos.add(durationNanos);
+            maxNanos.accumulateAndGet(durationNanos, Math::max);
+        }
+
+        HistogramSnapshot snapshot(Key key) {
+            long[] counts = new long[bucketCounts.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = bucketCounts[i].sum();
+            }
+            return new HistogramSnapshot(key.phase().label(), key.part(), count.sum(), sumNanos.sum() / 1_000_000_000D, maxNanos.get() / 1_000_000_000D, BUCKET_UPPER_BOUNDS_SECONDS, counts);
+        }
+    }
+
+    /**
+     * @param bucketCounts number of durations in each bucket, not cumulated, the last one being above every upper bound
+     */
+    record HistogramSnapshot(String phase, String part, long count, double sumSeconds, double maxSeconds, double[] bucketUpperBoundsSeconds, long[] bucketCounts) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.github.lernejo.korekto.toolkit.Exercise;
+import com.github.lernejo.korekto.toolkit.GradingContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Random sources of a grading.
+ * <p>
+ * By default, every draw is made from the toolkit shared source, as the end-to-end tests expect.
+ * Its sequence is only reproducible when exercises, and the parts drawing from it, are graded one after the other.
+ * With `-DGRADING_SEED`, each part of each exercise draws from its own generator, seeded from this seed, the exercise and the part,
+ * so that grades depend neither on the order nor on the concurrency of gradings and parts.
+ * <p>
+ * The draws of each part are recorded, so that a reused part can make them again and leave the shared source as a full grading would.
+ */
+class GradingRandomSource {
+
+    static final Long SEED = System.getProperty("GRADING_SEED") != null ? Long.parseLong(System.getProperty("GRADING_SEED")) : null;
+
+    private static final RandomSupplier SHARED = new RandomSupplier() {
+        @Override
+        public int nextInt(int bound) {
+            return GradingContext.getRandomSource().nextInt(bound);
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            return GradingContext.getRandomSource().nextBoolean();
+        }
+
+        @Override
+        public UUID nextUuid() {
+            return GradingContext.getRandomSource().nextUuid();
+        }
+    };
+
+    private final Supplier<Exercise> exercise;
+    private final Map<String, RecordingRandomSupplier> sourcesByPart = new ConcurrentHashMap<>();
+
+    GradingRandomSource(Supplier<Exercise> exercise) {
+        this.exercise = exercise;
+    }
+
+    static boolean isSeeded() {
+        return SEED != null;
+    }
+
+    RandomSupplier forPart(String partName) {
+        return recorderOf(partName);
+    }
+
+    /**
+     * @return the draws made so far by the given part
+     */
+    List<Integer> drawsOf(String partName) {
+        return recorderOf(partName).draws();
+    }
+
+    /**
+     * Makes again draws recorded by {@link #drawsOf(String)}, in place of the part.
+     */
+    void replay(String partName, List<Integer> draws) {
+        recorderOf(partName).replay(draws);
+    }
+
+    private RecordingRandomSupplier recorderOf(String partName) {
+        return sourcesByPart.computeIfAbsent(partName, name -> {
+            if (!isSeeded()) {
+                return new RecordingRandomSupplier(SHARED);
+            }
+            String key = exercise.get().getRoot().getFileName() + "/" + name;
+            return new RecordingRandomSupplier(RandomSupplier.of(new Random(SEED ^ (key.hashCode() * 0x9E37_79B9_7F4A_7C15L))));
+        });
+    }
+
+    /**
+     * Ports are drawn before the exercise is known, and do not change grades, so they are not seeded.
+     */
+    RandomSupplier forPorts() {
+        return isSeeded() ? RandomSupplier.of(new Random()) : SHARED;
+    }
+}
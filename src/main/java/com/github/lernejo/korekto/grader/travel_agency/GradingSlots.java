@@ -0,0 +1,41 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps the number of exercises graded at the same time in the JVM.
+ * <p>
+ * The toolkit launcher grades exercises one after the other, so this only matters to callers running {@link TravelAgencyGrader#run} from several threads.
+ * Each grading runs Maven and up to two student servers, so the default cap is derived from the number of cores and the host memory.
+ * It can be set with `-DGRADING_CONCURRENCY`.
+ * Without `-DGRADING_SEED`, gradings draw from the same random source, so the default cap is 1 to keep grades reproducible,
+ * see {@link GradingRandomSource}.
+ */
+class GradingSlots {
+
+    private static final long MEMORY_PER_GRADING = 2L * 1024 * 1024 * 1024;
+
+    static final GradingSlots INSTANCE = new GradingSlots(Integer.parseInt(System.getProperty("GRADING_CONCURRENCY", String.valueOf(GradingRandomSource.isSeeded() ? defaultConcurrency() : 1))));
+
+    private final Semaphore semaphore;
+
+    GradingSlots(int concurrency) {
+        this.semaphore = new Semaphore(concurrency, true);
+    }
+
+    void acquire() {
+        semaphore.acquireUninterruptibly();
+    }
+
+    void release() {
+        semaphore.release();
+    }
+
+    private static int defaultConcurrency() {
+        int byCores = Runtime.getRuntime().availableProcessors() / 2;
+        long totalMemory = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalMemorySize();
+        int byMemory = (int) (totalMemory / MEMORY_PER_GRADING);
+        return Math.max(1, Math.min(byCores, byMemory));
+    }
+}
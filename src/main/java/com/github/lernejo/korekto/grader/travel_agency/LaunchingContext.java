@@ -1,43 +1,121 @@
 package com.github.lernejo.korekto.grader.travel_agency;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.lernejo.korekto.grader.travel_agency.parts.SiteServer;
 import com.github.lernejo.korekto.toolkit.GradingConfiguration;
 import com.github.lernejo.korekto.toolkit.GradingContext;
+import com.github.lernejo.korekto.toolkit.PartGrader;
 import com.github.lernejo.korekto.toolkit.partgrader.MavenContext;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 
+import java.util.List;
 import java.util.Random;
-import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
 
 public class LaunchingContext extends GradingContext implements MavenContext {
     public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final SilentJacksonConverterFactory JACKSON_CONVERTER_FACTORY = SilentJacksonConverterFactory.create(OBJECT_MAPPER);
+    private static final OkHttpClient HTTP_CLIENT = newHttpClient();
 
     public final TravelAgencyApiClient travelAgencyApiClient;
     public final PredictionApiClient predictionApiClient;
-    public final int predictionServerPort = 7000 + getRandomSource().nextInt(600);
-    public final int siteServerPort = 9000 + getRandomSource().nextInt(600);
+    private final GradingRandomSource randomSource = new GradingRandomSource(this::getExercise);
+    private final PortAllocator.PortLease predictionServerPortLease = PortAllocator.INSTANCE.lease(7000, 600, randomSource.forPorts().nextInt(600));
+    // Same offset as the stub, so that the seeded draws stay those the end-to-end tests expect
+    private final PortAllocator.PortLease predictionEngineServerPortLease = PortAllocator.INSTANCE.lease(8000, 600, predictionServerPortLease.port - 7000);
+    private final PortAllocator.PortLease siteServerPortLease = PortAllocator.INSTANCE.lease(9000, 600, randomSource.forPorts().nextInt(600));
+
+    public final int predictionServerPort = predictionServerPortLease.port;
+    public final int predictionEngineServerPort = predictionEngineServerPortLease.port;
+    public final int siteServerPort = siteServerPortLease.port;
     public final long serverStartTimeout = Long.parseLong(System.getProperty("SERVER_START_TIMEOUT", "40"));
+    public final boolean singlePassBuild = !"multi-pass".equalsIgnoreCase(System.getProperty("BUILD_MODE", "single-pass"));
+    public final boolean launchServersFromJar = !"maven".equalsIgnoreCase(System.getProperty("SERVER_LAUNCHER", "jar"));
+    public final String serverMaxHeap = System.getProperty("SERVER_MAX_HEAP");
+    public final String mavenDaemonExecutable = "mvnd".equalsIgnoreCase(System.getProperty("MAVEN_BACKEND", "forked")) ? System.getProperty("MVND_EXECUTABLE", "mvnd") : null;
+    public final long mavenDaemonTimeout = Long.parseLong(System.getProperty("MVND_TIMEOUT", "600"));
+    public final String mavenRepoLocal = System.getProperty("MAVEN_REPO_LOCAL");
 
-    private final Supplier<SilentJacksonConverterFactory.ExceptionHolder> exceptionHolderSupplier;
-    private boolean compilationFailed;
-    private boolean testFailed;
-    private boolean siteServerFailed;
+    private volatile boolean compilationFailed;
+    private volatile boolean testFailed;
+    private volatile boolean siteServerFailed;
+    private volatile boolean transientFailure;
+    private volatile SiteServer siteServer;
 
     LaunchingContext(GradingConfiguration configuration) {
         super(configuration);
-        SilentJacksonConverterFactory jacksonConverterFactory = SilentJacksonConverterFactory.create(OBJECT_MAPPER);
         this.travelAgencyApiClient = new Retrofit.Builder()
             .baseUrl("http://localhost:" + siteServerPort + "/")
-            .addConverterFactory(jacksonConverterFactory)
+            .client(HTTP_CLIENT)
+            .addConverterFactory(JACKSON_CONVERTER_FACTORY)
             .build()
             .create(TravelAgencyApiClient.class);
 
         this.predictionApiClient = new Retrofit.Builder()
-            .baseUrl("http://localhost:" + predictionServerPort + "/")
-            .addConverterFactory(jacksonConverterFactory)
+            .baseUrl("http://localhost:" + predictionEngineServerPort + "/")
+            .client(HTTP_CLIENT)
+            .addConverterFactory(JACKSON_CONVERTER_FACTORY)
             .build()
             .create(PredictionApiClient.class);
-        this.exceptionHolderSupplier = jacksonConverterFactory::newExceptionHolder;
+    }
+
+    /**
+     * Client shared by all the exercises graded in this process, so that they share its connections and threads.
+     * <p>
+     * Its limits can be tuned with the following system properties:
+     * <ul>
+     *     <li>`HTTP_CONNECT_TIMEOUT_MS` (2 sec. by default), `HTTP_READ_TIMEOUT_MS` and `HTTP_WRITE_TIMEOUT_MS` (10 sec. by default)</li>
+     *     <li>`HTTP_CALL_TIMEOUT_MS` (30 sec. by default), the deadline of a whole call, so that a hung server cannot block a part</li>
+     *     <li>`HTTP_MAX_REQUESTS` (256 by default) and `HTTP_MAX_REQUESTS_PER_HOST` (64 by default), for concurrent asynchronous calls</li>
+     *     <li>`HTTP_MAX_IDLE_CONNECTIONS` (32 by default) and `HTTP_KEEP_ALIVE_SEC` (30 by default)</li>
+     * </ul>
+     */
+    private static OkHttpClient newHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Integer.parseInt(System.getProperty("HTTP_MAX_REQUESTS", "256")));
+        dispatcher.setMaxRequestsPerHost(Integer.parseInt(System.getProperty("HTTP_MAX_REQUESTS_PER_HOST", "64")));
+        return new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(
+                Integer.parseInt(System.getProperty("HTTP_MAX_IDLE_CONNECTIONS", "32")),
+                Long.parseLong(System.getProperty("HTTP_KEEP_ALIVE_SEC", "30")),
+                TimeUnit.SECONDS))
+            .connectTimeout(Long.parseLong(System.getProperty("HTTP_CONNECT_TIMEOUT_MS", "2000")), TimeUnit.MILLISECONDS)
+            .readTimeout(Long.parseLong(System.getProperty("HTTP_READ_TIMEOUT_MS", "10000")), TimeUnit.MILLISECONDS)
+            .writeTimeout(Long.parseLong(System.getProperty("HTTP_WRITE_TIMEOUT_MS", "10000")), TimeUnit.MILLISECONDS)
+            .callTimeout(Long.parseLong(System.getProperty("HTTP_CALL_TIMEOUT_MS", "30000")), TimeUnit.MILLISECONDS)
+            .eventListenerFactory(GradingMetrics.INSTANCE.httpCallListenerFactory())
+            .build();
+    }
+
+    /**
+     * @return the source the given part should draw from, see {@link GradingRandomSource}
+     */
+    public RandomSupplier randomSource(PartGrader<?> part) {
+        return randomSource.forPart(part.name());
+    }
+
+    List<Integer> randomDraws(PartGrader<?> part) {
+        return randomSource.drawsOf(part.name());
+    }
+
+    void replayRandomDraws(PartGrader<?> part, List<Integer> draws) {
+        randomSource.replay(part.name(), draws);
+    }
+
+    /**
+     * Marks the grading as affected by a failure which may not happen again, such as a server not started in time,
+     * so that its grades are not reused.
+     */
+    public void markAsTransientFailure() {
+        transientFailure = true;
+    }
+
+    public boolean hasTransientFailure() {
+        return transientFailure;
     }
 
     public void setSiteServerFailed() {
@@ -48,8 +126,31 @@ public class LaunchingContext extends GradingContext implements MavenContext {
         return siteServerFailed;
     }
 
-    public SilentJacksonConverterFactory.ExceptionHolder newExceptionHolder() {
-        return exceptionHolderSupplier.get();
+    public SiteServer getSiteServer() {
+        return siteServer;
+    }
+
+    public void setSiteServer(SiteServer siteServer) {
+        this.siteServer = siteServer;
+    }
+
+    /**
+     * Stops the shared **site** server, if any, once no part needs it anymore.
+     */
+    public void closeSiteServer() {
+        if (siteServer != null) {
+            siteServer.close();
+            siteServer = null;
+        }
+    }
+
+    /**
+     * Gives the ports of this grading back, so that another exercise can use them.
+     */
+    public void releasePorts() {
+        predictionServerPortLease.close();
+        predictionEngineServerPortLease.close();
+        siteServerPortLease.close();
     }
 
     @Override
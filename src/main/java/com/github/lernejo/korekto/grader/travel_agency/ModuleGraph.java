@@ -0,0 +1,142 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Modules of a multi-module Maven project, as declared by its root POM, and the dependencies between them.
+ */
+final class ModuleGraph {
+
+    private final Map<String, String> moduleByArtifactId = new HashMap<>();
+    private final Map<String, List<String>> dependencyArtifactIdsByModule = new HashMap<>();
+
+    private ModuleGraph() {
+    }
+
+    /**
+     * @throws IOException if a POM cannot be read or parsed
+     */
+    static ModuleGraph of(Path root) throws IOException {
+        ModuleGraph graph = new ModuleGraph();
+        Path rootPom = root.resolve("pom.xml");
+        if (!Files.exists(rootPom)) {
+            return graph;
+        }
+        for (String module : childTexts(parse(rootPom), "modules", "module")) {
+            Path modulePom = root.resolve(module).resolve("pom.xml");
+            if (Files.exists(modulePom)) {
+                Element project = parse(modulePom);
+                childText(project, "artifactId").ifPresent(artifactId -> graph.moduleByArtifactId.put(artifactId, module));
+                graph.dependencyArtifactIdsByModule.put(module, dependencyArtifactIds(project));
+            }
+        }
+        return graph;
+    }
+
+    Set<String> modules() {
+        return new TreeSet<>(dependencyArtifactIdsByModule.keySet());
+    }
+
+    /**
+     * @return the given module and the modules of the project it depends on, directly or not
+     */
+    Set<String> withDependencies(String module) {
+        Set<String> modules = new TreeSet<>();
+        Deque<String> toVisit = new ArrayDeque<>(List.of(module));
+        while (!toVisit.isEmpty()) {
+            String current = toVisit.pop();
+            if (modules.add(current)) {
+                for (String artifactId : dependencyArtifactIdsByModule.getOrDefault(current, List.of())) {
+                    String dependency = moduleByArtifactId.get(artifactId);
+                    if (dependency != null) {
+                        toVisit.push(dependency);
+                    }
+                }
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * @return the artifact ids of the dependencies of the project, leaving out the dependency management and profiles
+     */
+    private static List<String> dependencyArtifactIds(Element project) {
+        List<String> artifactIds = new ArrayList<>();
+        for (Element dependencies : children(project, "dependencies")) {
+            for (Element dependency : children(dependencies, "dependency")) {
+                childText(dependency, "artifactId").ifPresent(artifactIds::add);
+            }
+        }
+        return artifactIds;
+    }
+
+    /**
+     * @return the texts of the grand-children, such as `module` elements of `modules`, leaving out those of profiles
+     */
+    private static List<String> childTexts(Element parent, String childName, String grandChildName) {
+        List<String> texts = new ArrayList<>();
+        for (Element child : children(parent, childName)) {
+            for (Element grandChild : children(child, grandChildName)) {
+                texts.add(grandChild.getTextContent().trim());
+            }
+        }
+        return texts;
+    }
+
+    private static Optional<String> childText(Element parent, String childName) {
+        return children(parent, childName).stream().findFirst().map(e -> e.getTextContent().trim());
+    }
+
+    private static List<Element> children(Element parent, String name) {
+        List<Element> children = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(node.getLocalName() != null ? node.getLocalName() : node.getNodeName())) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    private static Element parse(Path pom) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // Parsing errors are reported by exceptions, rather than also printed
+            builder.setErrorHandler(new DefaultHandler());
+            Document document = builder.parse(pom.toFile());
+            return document.getDocumentElement();
+        } catch (SAXException e) {
+            throw new IOException("Unable to parse " + pom + ": " + e.getMessage(), e);
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+/**
+ * Outcome of the deserialization of a single response body, as produced by {@link SilentJacksonConverterFactory}.
+ * <p>
+ * Being returned along with the response, it cannot be mixed up with the outcome of concurrent calls.
+ *
+ * @param value   the deserialized body, null if it could not be parsed
+ * @param problem the reason why the body could not be parsed, null otherwise
+ */
+public record Parsed<T>(T value, SilentJacksonConverterFactory.DeserializationProblem problem) {
+
+    public static <T> Parsed<T> of(T value) {
+        return new Parsed<>(value, null);
+    }
+
+    public static <T> Parsed<T> failed(SilentJacksonConverterFactory.DeserializationProblem problem) {
+        return new Parsed<>(null, problem);
+    }
+
+    public boolean hasProblem() {
+        return problem != null;
+    }
+
+    /**
+     * @return true if there is no body, as for a `204 No Content`, or if it could not be parsed, or if it is a JSON null
+     */
+    public static boolean isMissingOrInvalid(Parsed<?> parsed) {
+        return parsed == null || parsed.hasProblem() || parsed.value() == null;
+    }
+
+    /**
+     * @return the body which could not be parsed, empty if there is none
+     */
+    public static String rawBodyOf(Parsed<?> parsed) {
+        return parsed != null && parsed.hasProblem() ? parsed.problem().rawBody() : "";
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.github.lernejo.korekto.toolkit.GradePart;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Grades parts on a bounded executor, each one as soon as the parts it depends on are done.
+ * <p>
+ * A part depends on the part providing any of its {@link Prerequisite}s, and, for exclusive ones, on the previous part needing it.
+ * Results are returned in the order of the given parts, once all are done, the failure of the first failed part being rethrown.
+ */
+class PartScheduler {
+
+    private final int parallelism;
+
+    PartScheduler(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    List<GradePart> grade(List<ScheduledPart> parts, Function<ScheduledPart, GradePart> gradeFunction) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            Map<Prerequisite, CompletableFuture<?>> providers = new EnumMap<>(Prerequisite.class);
+            Map<Prerequisite, CompletableFuture<?>> lastExclusiveUsers = new EnumMap<>(Prerequisite.class);
+            List<CompletableFuture<GradePart>> results = new ArrayList<>();
+            for (ScheduledPart part : parts) {
+                List<CompletableFuture<?>> dependencies = new ArrayList<>();
+                for (Prerequisite need : part.needs()) {
+                    if (providers.containsKey(need)) {
+                        dependencies.add(providers.get(need));
+                    }
+                    if (need.exclusive && lastExclusiveUsers.containsKey(need)) {
+                        dependencies.add(lastExclusiveUsers.get(need));
+                    }
+                }
+                CompletableFuture<GradePart> result = CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+                    .handle((v, e) -> v)
+                    .thenApplyAsync(v -> gradeFunction.apply(part), executor);
+                part.provides().ifPresent(p -> providers.put(p, result));
+                part.needs().stream().filter(p -> p.exclusive).forEach(p -> lastExclusiveUsers.put(p, result));
+                results.add(result);
+            }
+            // Let every part finish before a failure is rethrown, so that none is interrupted while using the servers
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).handle((v, e) -> v).join();
+            return results.stream().map(PartScheduler::join).collect(Collectors.toList());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static GradePart join(CompletableFuture<GradePart> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out leases on free ports, so that exercises graded concurrently in the same JVM never get the same one.
+ */
+class PortAllocator {
+
+    static final PortAllocator INSTANCE = new PortAllocator();
+
+    private final Set<Integer> leasedPorts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Leases the first port of the range, starting at the given offset, that is neither leased nor already bound.
+     */
+    PortLease lease(int rangeStart, int rangeSize, int startOffset) {
+        for (int i = 0; i < rangeSize; i++) {
+            int port = rangeStart + (startOffset + i) % rangeSize;
+            if (leasedPorts.add(port)) {
+                if (isFree(port)) {
+                    return new PortLease(port);
+                }
+                leasedPorts.remove(port);
+            }
+        }
+        throw new IllegalStateException("No free port left between " + rangeStart + " and " + (rangeStart + rangeSize - 1));
+    }
+
+    private static boolean isFree(int port) {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.bind(new InetSocketAddress(port));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    class PortLease implements AutoCloseable {
+        final int port;
+
+        private PortLease(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public void close() {
+            leasedPorts.remove(port);
+        }
+    }
+}
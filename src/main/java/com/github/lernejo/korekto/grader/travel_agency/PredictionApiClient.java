@@ -26,7 +26,7 @@ public interface PredictionApiClient {
 
     @GET("api/temperature")
     @Headers("Accept:application/json")
-    Call<Prediction> getTemperature(@Query("country") String country);
+    Call<Parsed<Prediction>> getTemperature(@Query("country") String country);
 
     record Prediction(String country, List<TempPoint> temperatures) {
     }
@@ -0,0 +1,26 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+/**
+ * What a part needs before it can be graded.
+ */
+enum Prerequisite {
+    /**
+     * Only the Git tree of the exercise, available from the start.
+     */
+    GIT_TREE(false),
+    /**
+     * Modules compiled and installed, as well as the sources patched for the **site** server, all done by Part 1.
+     */
+    COMPILED_SOURCES(false),
+    /**
+     * Student servers, one part at a time, in declaration order.
+     * This keeps the shared **site** server scenarios and the random sequence in the same order as a sequential grading.
+     */
+    STUDENT_SERVERS(true);
+
+    final boolean exclusive;
+
+    Prerequisite(boolean exclusive) {
+        this.exclusive = exclusive;
+    }
+}
@@ -2,40 +2,70 @@ package com.github.lernejo.korekto.grader.travel_agency;
 
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
 
+import java.util.Random;
 import java.util.UUID;
 
+/**
+ * Seeded source of randomness, every value being derived from {@link #nextInt(int)} so that gradings can be replayed.
+ * <p>
+ * Implementations backed by a generator producing 32 bits at once should override {@link #nextInt()}, as {@link #of(Random)} does.
+ */
 @SubjectForToolkitInclusion
 public interface RandomSupplier {
 
+    /**
+     * @return a supplier drawing 32 bits at once from the given generator for {@link #nextInt()}
+     */
+    static RandomSupplier of(Random random) {
+        return new RandomSupplier() {
+            @Override
+            public int nextInt(int bound) {
+                return random.nextInt(bound);
+            }
+
+            @Override
+            public int nextInt() {
+                return random.nextInt();
+            }
+        };
+    }
+
     int nextInt(int bound);
 
+    /**
+     * @return an int uniformly drawn among all 2<sup>32</sup> values, from two 16 bits draws by default
+     */
+    default int nextInt() {
+        return (nextInt(1 << 16) << 16) | nextInt(1 << 16);
+    }
+
+    default long nextLong() {
+        return ((long) nextInt() << 32) | (nextInt() & 0xFFFF_FFFFL);
+    }
+
     default boolean nextBoolean() {
         return nextInt(2) > 0;
     }
 
+    /**
+     * Fills the given array with 4 bytes per {@link #nextInt()}.
+     */
     default void nextBytes(byte[] bytes) {
-        for (int i = 0; i < bytes.length; i++) {
-            bytes[i] = Integer.valueOf(nextInt(256) - 128).byteValue();
+        int i = 0;
+        while (i < bytes.length) {
+            int value = nextInt();
+            for (int n = Math.min(bytes.length - i, Integer.BYTES); n > 0; n--, value >>>= Byte.SIZE) {
+                bytes[i++] = (byte) value;
+            }
         }
     }
 
+    /**
+     * @return a version 4 UUID made of two {@link #nextLong()}
+     */
     default UUID nextUuid() {
-        byte[] data = new byte[16];
-        nextBytes(data);
-        data[6] &= 0x0f;
-        data[6] |= 0x40;
-        data[8] &= 0x3f;
-        data[8] |= 0x80;
-
-        long msb = 0;
-        long lsb = 0;
-        for (int i = 0; i < 8; i++)
-            msb = (msb << 8) | (data[i] & 0xff);
-        for (int i = 8; i < 16; i++)
-            lsb = (lsb << 8) | (data[i] & 0xff);
-        long mostSigBits = msb;
-        long leastSigBits = lsb;
-
+        long mostSigBits = (nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (nextLong() & 0x3FFF_FFFF_FFFF_FFFFL) | 0x8000_0000_0000_0000L;
         return new UUID(mostSigBits, leastSigBits);
     }
 }
@@ -0,0 +1,67 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link RandomSupplier} recording the draws made from another one, so that a part reused from a previous grading
+ * can make the same draws again, without their results, and leave the source as a full grading would.
+ * <p>
+ * Each draw is recorded as an int: the bound of {@link #nextInt(int)}, or a negative code for the other draws the source may implement by itself.
+ */
+final class RecordingRandomSupplier implements RandomSupplier {
+
+    private static final int INT = -1;
+    private static final int BOOLEAN = -2;
+    private static final int UUID_DRAW = -3;
+
+    private final RandomSupplier source;
+    private final List<Integer> draws = new ArrayList<>();
+
+    RecordingRandomSupplier(RandomSupplier source) {
+        this.source = source;
+    }
+
+    @Override
+    public synchronized int nextInt(int bound) {
+        draws.add(bound);
+        return source.nextInt(bound);
+    }
+
+    @Override
+    public synchronized int nextInt() {
+        draws.add(INT);
+        return source.nextInt();
+    }
+
+    @Override
+    public synchronized boolean nextBoolean() {
+        draws.add(BOOLEAN);
+        return source.nextBoolean();
+    }
+
+    @Override
+    public synchronized UUID nextUuid() {
+        draws.add(UUID_DRAW);
+        return source.nextUuid();
+    }
+
+    synchronized List<Integer> draws() {
+        return List.copyOf(draws);
+    }
+
+    /**
+     * Makes again the given draws, as recorded by {@link #draws()}.
+     */
+    synchronized void replay(List<Integer> recordedDraws) {
+        for (int draw : recordedDraws) {
+            switch (draw) {
+                case INT -> nextInt();
+                case BOOLEAN -> nextBoolean();
+                case UUID_DRAW -> nextUuid();
+                default -> nextInt(draw);
+            }
+        }
+    }
+}
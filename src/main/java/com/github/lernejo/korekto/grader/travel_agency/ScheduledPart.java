@@ -0,0 +1,42 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.github.lernejo.korekto.toolkit.PartGrader;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * {@link PartGrader} along with what it needs, and possibly provides, so that independent parts can be graded concurrently.
+ * <p>
+ * Parts depending on a module, or on the whole build, can be reused from a previous grading when the modules they depend on did not change.
+ */
+record ScheduledPart(PartGrader<LaunchingContext> grader, Set<Prerequisite> needs, Optional<Prerequisite> provides, Optional<Reuse> reuse) {
+
+    static ScheduledPart needing(PartGrader<LaunchingContext> grader, Prerequisite first, Prerequisite... others) {
+        return new ScheduledPart(grader, EnumSet.of(first, others), Optional.empty(), Optional.empty());
+    }
+
+    ScheduledPart providing(Prerequisite prerequisite) {
+        return new ScheduledPart(grader, needs, Optional.of(prerequisite), reuse);
+    }
+
+    /**
+     * @param module the module the part depends on, along with the modules this one depends on, or {@link GradeCache#ALL_MODULES}
+     */
+    ScheduledPart reusableFor(String module) {
+        return reusableFor(module, context -> {
+        });
+    }
+
+    /**
+     * @param onImperfectReuse restores the state a failure of the part leaves in the context, when reusing a result below the maximum grade
+     */
+    ScheduledPart reusableFor(String module, Consumer<LaunchingContext> onImperfectReuse) {
+        return new ScheduledPart(grader, needs, provides, Optional.of(new Reuse(module, onImperfectReuse)));
+    }
+
+    record Reuse(String module, Consumer<LaunchingContext> onImperfectReuse) {
+    }
+}
@@ -1,9 +1,11 @@
 package com.github.lernejo.korekto.grader.travel_agency;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.lernejo.korekto.grader.travel_agency.events.ParseFailureEvent;
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
 import okhttp3.MediaType;
 import okhttp3.RequestBody;
@@ -13,32 +15,57 @@ import retrofit2.Retrofit;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Jackson converter which does not fail calls on unparseable bodies.
+ * <p>
+ * Declaring a {@link Parsed} response type gives access to the deserialization problem of each call, if any.
+ * Other response types are silently converted to null.
+ */
 @SubjectForToolkitInclusion
 public class SilentJacksonConverterFactory extends Converter.Factory {
-    private final List<DeserializationProblem> latestDeserializationProblems = new ArrayList<>();
-
     private final ObjectMapper mapper;
+    private final int captureLimit;
+    private final long maxBodySize;
 
+    /**
+     * Bodies are captured up to `-DRESPONSE_CAPTURE_KB` (16 by default) for error reporting,
+     * and rejected beyond `-DRESPONSE_MAX_BODY_MB` (16 by default).
+     */
     public static SilentJacksonConverterFactory create(ObjectMapper mapper) {
+        return create(mapper,
+            Integer.parseInt(System.getProperty("RESPONSE_CAPTURE_KB", "16")) * 1024,
+            Long.parseLong(System.getProperty("RESPONSE_MAX_BODY_MB", "16")) * 1024 * 1024);
+    }
+
+    public static SilentJacksonConverterFactory create(ObjectMapper mapper, int captureLimit, long maxBodySize) {
         if (mapper == null) {
             throw new NullPointerException("mapper == null");
         } else {
-            return new SilentJacksonConverterFactory(mapper);
+            return new SilentJacksonConverterFactory(mapper, captureLimit, maxBodySize);
         }
     }
 
-    private SilentJacksonConverterFactory(ObjectMapper mapper) {
+    private SilentJacksonConverterFactory(ObjectMapper mapper, int captureLimit, long maxBodySize) {
         this.mapper = mapper;
+        this.captureLimit = captureLimit;
+        this.maxBodySize = maxBodySize;
     }
 
     public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(type) == Parsed.class && type instanceof ParameterizedType parameterizedType) {
+            Type valueType = getParameterUpperBound(0, parameterizedType);
+            return new SilentJacksonResponseBodyConverter<>(readerFor(valueType), valueType);
+        }
+        SilentJacksonResponseBodyConverter<?> converter = new SilentJacksonResponseBodyConverter<>(readerFor(type), type);
+        return value -> converter.convert(value).value();
+    }
+
+    private ObjectReader readerFor(Type type) {
         JavaType javaType = this.mapper.getTypeFactory().constructType(type);
-        ObjectReader reader = this.mapper.readerFor(javaType);
-        return new SilentJacksonResponseBodyConverter(reader);
+        return this.mapper.readerFor(javaType);
     }
 
     public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
@@ -47,20 +74,33 @@ public class SilentJacksonConverterFactory extends Converter.Factory {
         return new SilentJacksonRequestBodyConverter(writer);
     }
 
-    class SilentJacksonResponseBodyConverter<T> implements Converter<ResponseBody, T> {
+    class SilentJacksonResponseBodyConverter<T> implements Converter<ResponseBody, Parsed<T>> {
         private final ObjectReader adapter;
+        private final Type type;
 
-        SilentJacksonResponseBodyConverter(ObjectReader adapter) {
+        SilentJacksonResponseBodyConverter(ObjectReader adapter, Type type) {
             this.adapter = adapter;
+            this.type = type;
         }
 
-        public T convert(ResponseBody value) throws IOException {
-            String rawBody = value.string();
+        /**
+         * Parses straight from the body stream, only keeping its first bytes in case parsing fails.
+         */
+        public Parsed<T> convert(ResponseBody value) throws IOException {
+            CapturingInputStream input = new CapturingInputStream(value.byteStream(), captureLimit, maxBodySize);
             try (value) {
-                return this.adapter.readValue(rawBody);
-            } catch (IOException e) {
-                latestDeserializationProblems.add(new DeserializationProblem(rawBody, e));
-                return null;
+                return Parsed.of(this.adapter.readValue(input));
+            } catch (JsonProcessingException | CapturingInputStream.BodyTooLargeException e) {
+                ParseFailureEvent event = new ParseFailureEvent();
+                if (event.shouldCommit()) {
+                    event.expectedType = type.getTypeName();
+                    event.bytesRead = input.count();
+                    event.bodyTooLarge = e instanceof CapturingInputStream.BodyTooLargeException;
+                    event.error = e.getMessage();
+                    event.commit();
+                }
+                input.fillCapture();
+                return Parsed.failed(new DeserializationProblem(input.capturedText(), e));
             }
         }
     }
@@ -79,22 +119,6 @@ public class SilentJacksonConverterFactory extends Converter.Factory {
         }
     }
 
-    public ExceptionHolder newExceptionHolder() {
-        return new ExceptionHolder();
-    }
-
-    public class ExceptionHolder implements AutoCloseable {
-
-        public DeserializationProblem getLatestDeserializationProblem() {
-            return latestDeserializationProblems.isEmpty() ? null : latestDeserializationProblems.get(latestDeserializationProblems.size() - 1);
-        }
-
-        @Override
-        public void close() {
-            latestDeserializationProblems.clear();
-        }
-    }
-
     public record DeserializationProblem(String rawBody, IOException ex) {
     }
 }
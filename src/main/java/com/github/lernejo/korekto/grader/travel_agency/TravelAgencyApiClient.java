@@ -28,7 +28,7 @@ public interface TravelAgencyApiClient {
 
     @GET("api/travels")
     @Headers("Accept:application/json")
-    Call<List<Travel>> getTravels(@Query("userName") String userName);
+    Call<Parsed<List<Travel>>> getTravels(@Query("userName") String userName);
 
     record Inscription(String userEmail,
                        String userName,
@@ -1,9 +1,11 @@
 package com.github.lernejo.korekto.grader.travel_agency;
 
+import com.github.lernejo.korekto.grader.travel_agency.events.PartGradingEvent;
 import com.github.lernejo.korekto.grader.travel_agency.parts.Part1Grader;
 import com.github.lernejo.korekto.grader.travel_agency.parts.Part4Grader;
 import com.github.lernejo.korekto.grader.travel_agency.parts.Part5Grader;
 import com.github.lernejo.korekto.grader.travel_agency.parts.Part6Grader;
+import com.github.lernejo.korekto.grader.travel_agency.parts.SitePerformanceGrader;
 import com.github.lernejo.korekto.toolkit.GradePart;
 import com.github.lernejo.korekto.toolkit.Grader;
 import com.github.lernejo.korekto.toolkit.GradingConfiguration;
@@ -19,11 +21,19 @@ import com.github.lernejo.korekto.toolkit.thirdparty.pmd.Rule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.lernejo.korekto.grader.travel_agency.Prerequisite.COMPILED_SOURCES;
+import static com.github.lernejo.korekto.grader.travel_agency.Prerequisite.GIT_TREE;
+import static com.github.lernejo.korekto.grader.travel_agency.Prerequisite.STUDENT_SERVERS;
+import static com.github.lernejo.korekto.grader.travel_agency.ScheduledPart.needing;
 
 @SubjectForToolkitInclusion
 public class TravelAgencyGrader implements Grader<LaunchingContext> {
@@ -33,6 +43,13 @@ public class TravelAgencyGrader implements Grader<LaunchingContext> {
     }
 
     private final Logger logger = LoggerFactory.getLogger(TravelAgencyGrader.class);
+    private final boolean slowUpstreamScenario = Boolean.parseBoolean(System.getProperty("SLOW_UPSTREAM_SCENARIO", "false"));
+    private final boolean largeHistoryScenario = Boolean.parseBoolean(System.getProperty("LARGE_HISTORY_SCENARIO", "false"));
+    private final boolean flakyUpstreamScenario = Boolean.parseBoolean(System.getProperty("FLAKY_UPSTREAM_SCENARIO", "false"));
+    private final boolean droppingUpstreamScenario = Boolean.parseBoolean(System.getProperty("DROPPING_UPSTREAM_SCENARIO", "false"));
+    private final boolean sitePerformance = Boolean.parseBoolean(System.getProperty("SITE_PERFORMANCE", "false"));
+    private final int parallelism = Integer.parseInt(System.getProperty("GRADING_PARALLELISM", String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors()))));
+    private final GradeCache gradeCache = GradeCache.fromSystemProperties();
 
     @Override
     public String slugToRepoUrl(String slug) {
@@ -47,10 +64,31 @@ public class TravelAgencyGrader implements Grader<LaunchingContext> {
     @Override
     public void run(LaunchingContext context) {
         Optional<GitNature> optionalGitNature = context.getExercise().lookupNature(GitNature.class);
-        if (optionalGitNature.isEmpty()) {
-            context.getGradeDetails().getParts().add(new GradePart("exercise", 0D, 12D, List.of("Not a Git project")));
-        } else {
-            context.getGradeDetails().getParts().addAll(grade(context));
+        try {
+            if (optionalGitNature.isEmpty()) {
+                context.getGradeDetails().getParts().add(new GradePart("exercise", 0D, 12D, List.of("Not a Git project")));
+            } else {
+                Optional<String> cacheKey = gradeCache != null ? gradeCache.keyOf(context.getExercise().getRoot()) : Optional.empty();
+                Optional<List<GradePart>> cachedParts = cacheKey.flatMap(gradeCache::lookup);
+                if (cachedParts.isPresent()) {
+                    logger.info("Reusing grades of the same commit for " + context.getExercise().getRoot().getFileName());
+                    context.getGradeDetails().getParts().addAll(cachedParts.get());
+                    return;
+                }
+                GradingSlots.INSTANCE.acquire();
+                try {
+                    Collection<? extends GradePart> parts = grade(context);
+                    context.getGradeDetails().getParts().addAll(parts);
+                    if (!context.hasTransientFailure()) {
+                        cacheKey.ifPresent(key -> gradeCache.store(key, parts));
+                    }
+                } finally {
+                    GradingSlots.INSTANCE.release();
+                }
+            }
+        } finally {
+            context.releasePorts();
+            GradingMetrics.INSTANCE.exportIfConfigured();
         }
     }
 
@@ -60,31 +98,106 @@ public class TravelAgencyGrader implements Grader<LaunchingContext> {
     }
 
     private Collection<? extends GradePart> grade(LaunchingContext context) {
-        return graders().stream()
-            .map(g -> applyPartGrader(context, g))
-            .collect(Collectors.toList());
+        Map<String, ReusablePart> reusableParts = new ConcurrentHashMap<>();
+        try {
+            List<ScheduledPart> graders = graders();
+            // Computed before Part 1 patches the site sources
+            Map<ScheduledPart, String> reuseKeys = reuseKeys(context, graders);
+            boolean buildReusable = isBuildReusable(graders, reuseKeys);
+            List<GradePart> parts = new PartScheduler(parallelism).grade(graders, p -> gradeOrReuse(context, p, reuseKeys, buildReusable, reusableParts));
+            // A transient failure also affects the parts skipped because of it
+            if (gradeCache != null && !context.hasTransientFailure()) {
+                reusableParts.forEach((key, part) -> gradeCache.storePart(key, part.result(), context.randomDraws(part.grader())));
+            }
+            return parts;
+        } finally {
+            context.closeSiteServer();
+        }
     }
 
-    private GradePart applyPartGrader(LaunchingContext context, PartGrader g) {
+    private Map<ScheduledPart, String> reuseKeys(LaunchingContext context, List<ScheduledPart> graders) {
+        Map<ScheduledPart, String> reuseKeys = new IdentityHashMap<>();
+        if (gradeCache != null) {
+            for (ScheduledPart part : graders) {
+                part.reuse()
+                    .flatMap(reuse -> gradeCache.moduleKeyOf(context.getExercise().getRoot(), reuse.module(), part.grader().name()))
+                    .ifPresent(key -> reuseKeys.put(part, key));
+            }
+        }
+        return reuseKeys;
+    }
+
+    /**
+     * The build is only skipped when no part needs what it provides, that is when all of them can be reused as well.
+     */
+    private boolean isBuildReusable(List<ScheduledPart> graders, Map<ScheduledPart, String> reuseKeys) {
+        return gradeCache != null && graders.stream()
+            .filter(p -> p.needs().contains(COMPILED_SOURCES) || providesBuild(p))
+            .allMatch(p -> reuseKeys.containsKey(p) && gradeCache.lookupPart(reuseKeys.get(p)).isPresent());
+    }
+
+    /**
+     * Reuses the result of a part when the modules it depends on are unchanged since a previous grading,
+     * making again the random draws it made then.
+     * Parts needing the build are graded from scratch when the build failed, as their result then depends on the other modules.
+     * The part providing the build is only reused when all the parts needing it are, so that the build and the server boots are skipped.
+     * Graded parts which could be reused later are added to the given map, by key.
+     */
+    private GradePart gradeOrReuse(LaunchingContext context, ScheduledPart part, Map<ScheduledPart, String> reuseKeys, boolean buildReusable, Map<String, ReusablePart> reusableParts) {
+        Optional<String> key = part.needs().contains(COMPILED_SOURCES) && context.hasCompilationFailed()
+            ? Optional.empty()
+            : Optional.ofNullable(reuseKeys.get(part));
+        Optional<GradeCache.ReusedPart> reused = providesBuild(part) && !buildReusable ? Optional.empty() : key.flatMap(gradeCache::lookupPart);
+        if (reused.isPresent()) {
+            String module = part.reuse().get().module();
+            logger.debug("Reusing " + part.grader().name() + " as " + (GradeCache.ALL_MODULES.equals(module) ? "no module changed" : "**" + module + "** did not change"));
+            context.replayRandomDraws(part.grader(), reused.get().randomDraws());
+            if (!reused.get().perfect()) {
+                part.reuse().get().onImperfectReuse().accept(context);
+            }
+            return reused.get().part();
+        }
+        GradePart result = applyPartGrader(context, part.grader());
+        key.ifPresent(k -> reusableParts.put(k, new ReusablePart(part.grader(), result)));
+        return result;
+    }
+
+    private static boolean providesBuild(ScheduledPart part) {
+        return part.provides().equals(Optional.of(COMPILED_SOURCES));
+    }
+
+    private GradePart applyPartGrader(LaunchingContext context, PartGrader<LaunchingContext> g) {
         long startTime = System.currentTimeMillis();
+        PartGradingEvent event = new PartGradingEvent();
+        event.begin();
         try {
-            return g.grade(context);
+            return GradingMetrics.INSTANCE.withinPart(g.name(), () -> g.grade(context));
         } finally {
+            if (event.shouldCommit()) {
+                event.exercise = context.getExercise().getRoot().getFileName().toString();
+                event.part = g.name();
+                event.commit();
+            }
             logger.debug(g.name() + " in " + HumanReadableDuration.toString(System.currentTimeMillis() - startTime));
         }
     }
 
-    private Collection<? extends PartGrader<LaunchingContext>> graders() {
-        return List.of(
-            new Part1Grader(),
-            new GitHubActionsPartGrader<>("Part 2 - CI", 2.0D),
-            new JacocoCoveragePartGrader<>("Part 3 - Code Coverage", 4.0D, 0.8D),
-            new Part4Grader(),
-            new Part5Grader(),
-            new Part6Grader(TravelAgencyApiClient.WeatherExpectation.COLDER),
-            new Part6Grader(TravelAgencyApiClient.WeatherExpectation.WARMER),
-            new GitHistoryPartGrader<>("Git (proper descriptive messages)", -4.0D),
-            new PmdPartGrader<>("Coding style", -15.0D,-1.0D,
+    private record ReusablePart(PartGrader<LaunchingContext> grader, GradePart result) {
+    }
+
+    private List<ScheduledPart> graders() {
+        List<ScheduledPart> graders = new ArrayList<>(List.of(
+            needing(new Part1Grader(), GIT_TREE).providing(COMPILED_SOURCES).reusableFor(GradeCache.ALL_MODULES),
+            needing(new GitHubActionsPartGrader<>("Part 2 - CI", 2.0D), GIT_TREE),
+            needing(new JacocoCoveragePartGrader<>("Part 3 - Code Coverage", 4.0D, 0.8D), COMPILED_SOURCES).reusableFor(GradeCache.ALL_MODULES),
+            // A failed Part 4 makes the next site parts skip
+            needing(new Part4Grader(), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site", LaunchingContext::setSiteServerFailed),
+            needing(new Part5Grader(), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("prediction-engine"),
+            needing(new Part6Grader(TravelAgencyApiClient.WeatherExpectation.COLDER), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site"),
+            needing(new Part6Grader(TravelAgencyApiClient.WeatherExpectation.WARMER), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site"),
+            needing(new GitHistoryPartGrader<>("Git (proper descriptive messages)", -4.0D), GIT_TREE),
+            // Analyzed once Part 1 patched the site sources, as in a sequential grading
+            needing(new PmdPartGrader<>("Coding style", -15.0D,-1.0D,
                 Rule.buildExcessiveClassLengthRule(80),
                 Rule.buildExcessiveMethodLengthRule(15),
                 Rule.buildFieldMandatoryModifierRule(0, "private", "final", "!static"),
@@ -95,7 +208,23 @@ public class TravelAgencyGrader implements Grader<LaunchingContext> {
                 Rule.buildUnusedPrivateFieldRule(),
                 Rule.buildUnusedLocalVariableRule(),
                 Rule.buildEmptyControlStatementRule()
-            )
-        );
+            ), COMPILED_SOURCES).reusableFor(GradeCache.ALL_MODULES)
+        ));
+        if (slowUpstreamScenario) {
+            graders.add(needing(new Part6Grader(TravelAgencyApiClient.WeatherExpectation.COLDER, Part6Grader.Scenario.slowUpstream()), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site"));
+        }
+        if (largeHistoryScenario) {
+            graders.add(needing(new Part6Grader(TravelAgencyApiClient.WeatherExpectation.WARMER, Part6Grader.Scenario.largeHistory()), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site"));
+        }
+        if (flakyUpstreamScenario) {
+            graders.add(needing(new Part6Grader(TravelAgencyApiClient.WeatherExpectation.COLDER, Part6Grader.Scenario.flakyUpstream()), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site"));
+        }
+        if (droppingUpstreamScenario) {
+            graders.add(needing(new Part6Grader(TravelAgencyApiClient.WeatherExpectation.WARMER, Part6Grader.Scenario.droppingUpstream()), COMPILED_SOURCES, STUDENT_SERVERS).reusableFor("site"));
+        }
+        if (sitePerformance) {
+            graders.add(needing(new SitePerformanceGrader(), COMPILED_SOURCES, STUDENT_SERVERS));
+        }
+        return graders;
     }
 }
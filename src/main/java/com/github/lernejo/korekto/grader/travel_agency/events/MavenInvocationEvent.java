@@ -0,0 +1,26 @@
+package com.github.lernejo.korekto.grader.travel_agency.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.lernejo.korekto.travel_agency.MavenInvocation")
+@Label("Maven Invocation")
+@Description("Maven goals run on an exercise, until they are done")
+@Category({"Korekto", "Travel Agency"})
+public class MavenInvocationEvent extends jdk.jfr.Event {
+
+    @Label("Exercise")
+    public String exercise;
+
+    @Label("Goals")
+    public String goals;
+
+    @Label("Backend")
+    @Description("forked, for a new Maven JVM started by the toolkit, or mvnd")
+    public String backend;
+
+    @Label("Successful")
+    public boolean successful;
+}
@@ -0,0 +1,28 @@
+package com.github.lernejo.korekto.grader.travel_agency.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.lernejo.korekto.travel_agency.ParseFailure")
+@Label("Parse Failure")
+@Description("Response body of a server of the exercise which could not be deserialized")
+@Category({"Korekto", "Travel Agency"})
+public class ParseFailureEvent extends jdk.jfr.Event {
+
+    @Label("Expected Type")
+    public String expectedType;
+
+    @Label("Bytes Read")
+    @Description("Bytes of the body read before parsing failed")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Body Too Large")
+    public boolean bodyTooLarge;
+
+    @Label("Error")
+    public String error;
+}
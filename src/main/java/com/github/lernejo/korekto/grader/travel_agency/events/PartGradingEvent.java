@@ -0,0 +1,19 @@
+package com.github.lernejo.korekto.grader.travel_agency.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.lernejo.korekto.travel_agency.PartGrading")
+@Label("Part Grading")
+@Description("Grading of a part of an exercise")
+@Category({"Korekto", "Travel Agency"})
+public class PartGradingEvent extends jdk.jfr.Event {
+
+    @Label("Exercise")
+    public String exercise;
+
+    @Label("Part")
+    public String part;
+}
@@ -0,0 +1,29 @@
+package com.github.lernejo.korekto.grader.travel_agency.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.lernejo.korekto.travel_agency.PredictionRequest")
+@Label("Prediction Request")
+@Description("Request handled by the prediction stub called by the site")
+@Category({"Korekto", "Travel Agency"})
+public class PredictionRequestEvent extends jdk.jfr.Event {
+
+    @Label("Port")
+    public int port;
+
+    @Label("Country")
+    public String country;
+
+    @Label("Status")
+    @Description("0 if the connection was dropped without a response")
+    public int status;
+
+    @Label("Response Bytes")
+    @Description("Bytes of response body written, compressed if gzipped")
+    @DataAmount
+    public long responseBytes;
+}
@@ -0,0 +1,23 @@
+package com.github.lernejo.korekto.grader.travel_agency.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.lernejo.korekto.travel_agency.ServerReady")
+@Label("Server Ready")
+@Description("Wait for a server of the exercise to be ready to serve requests")
+@Category({"Korekto", "Travel Agency"})
+public class ServerReadyEvent extends jdk.jfr.Event {
+
+    @Label("Module")
+    public String module;
+
+    @Label("Port")
+    public int port;
+
+    @Label("Ready")
+    @Description("False if the server exited or was not ready in time")
+    public boolean ready;
+}
@@ -0,0 +1,23 @@
+package com.github.lernejo.korekto.grader.travel_agency.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.github.lernejo.korekto.travel_agency.ServerSpawn")
+@Label("Server Spawn")
+@Description("Start of the process of a server of the exercise, before it is ready")
+@Category({"Korekto", "Travel Agency"})
+public class ServerSpawnEvent extends jdk.jfr.Event {
+
+    @Label("Module")
+    public String module;
+
+    @Label("Port")
+    public int port;
+
+    @Label("Launcher")
+    @Description("jar or maven")
+    public String launcher;
+}
@@ -0,0 +1,166 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tells apart dependency resolution, compilation and test failures of a build from its output and from what it left in the `target` directories of each module.
+ */
+class BuildReports {
+
+    private static final Pattern COMPILER_FAILURE_PATTERN = Pattern.compile("^\\[ERROR] Failed to execute goal org\\.apache\\.maven\\.plugins:maven-compiler-plugin:[^:]+:(compile|testCompile) .*");
+    private static final Pattern MISSING_ARTIFACT_PATTERN = Pattern.compile("^\\[ERROR] .*(?:the artifact (\\S+) has not been downloaded from it before|Could not find artifact (\\S+))");
+
+    /**
+     * @param buildLog output of a Maven build, as written with `--log-file`
+     * @return the first artifact, dependency or plugin, the build could not resolve, such as one missing from the repository used offline
+     */
+    static Optional<String> missingArtifact(Path buildLog) {
+        if (!Files.isRegularFile(buildLog)) {
+            return Optional.empty();
+        }
+        try (Stream<String> lines = Files.lines(buildLog)) {
+            return lines
+                .map(MISSING_ARTIFACT_PATTERN::matcher)
+                .filter(Matcher::find)
+                .map(matcher -> matcher.group(1) != null ? matcher.group(1) : matcher.group(2))
+                .findFirst();
+        } catch (IOException | UncheckedIOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param buildLog output of a Maven build, as written with `--log-file`
+     * @return true if the compilation of main or test sources failed in any module, or, without build output,
+     * if some module having sources did not get them compiled
+     */
+    static boolean hasCompilationFailed(Path root, Path buildLog) {
+        if (!Files.isRegularFile(buildLog)) {
+            return !isCompiled(root);
+        }
+        try (Stream<String> lines = Files.lines(buildLog)) {
+            return lines.anyMatch(line -> COMPILER_FAILURE_PATTERN.matcher(line).matches());
+        } catch (IOException | UncheckedIOException e) {
+            return !isCompiled(root);
+        }
+    }
+
+    /**
+     * @return true if any surefire or failsafe report contains a failure or an error
+     */
+    static boolean hasTestFailures(Path root) {
+        return modules(root).stream()
+            .flatMap(module -> Stream.of(module.resolve("target/surefire-reports"), module.resolve("target/failsafe-reports")))
+            .filter(Files::isDirectory)
+            .flatMap(BuildReports::listReports)
+            .anyMatch(BuildReports::reportsFailure);
+    }
+
+    /**
+     * @return true if every module having main or test sources got them compiled
+     */
+    static boolean isCompiled(Path root) {
+        return modules(root).stream()
+            .allMatch(module -> isCompiled(module.resolve("src/main/java"), module.resolve("target/classes"))
+                && isCompiled(module.resolve("src/test/java"), module.resolve("target/test-classes")));
+    }
+
+    private static boolean isCompiled(Path sources, Path classes) {
+        return !containsFileWithExtension(sources, ".java") || containsFileWithExtension(classes, ".class");
+    }
+
+    private static List<Path> modules(Path root) {
+        try (Stream<Path> poms = Files.find(root, 3, (p, attrs) -> p.getFileName().toString().equals("pom.xml"))) {
+            return poms
+                .map(Path::getParent)
+                .filter(module -> !root.relativize(module).toString().contains("target"))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    private static boolean containsFileWithExtension(Path directory, String extension) {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.anyMatch(p -> p.getFileName().toString().endsWith(extension));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Stream<Path> listReports(Path reportDirectory) {
+        try (Stream<Path> files = Files.list(reportDirectory)) {
+            return files
+                .filter(p -> p.getFileName().toString().startsWith("TEST-") && p.getFileName().toString().endsWith(".xml"))
+                .collect(Collectors.toList())
+                .stream();
+        } catch (IOException e) {
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * A report which cannot be read or parsed, such as one truncated by a crashed fork, counts as a failure.
+     */
+    private static boolean reportsFailure(Path report) {
+        try {
+            Document document = newDocumentBuilder().parse(report.toFile());
+            NodeList testSuites = document.getElementsByTagName("testsuite");
+            for (int i = 0; i < testSuites.getLength(); i++) {
+                Element testSuite = (Element) testSuites.item(i);
+                if (count(testSuite, "failures") > 0 || count(testSuite, "errors") > 0) {
+                    return true;
+                }
+            }
+            return document.getElementsByTagName("failure").getLength() > 0 || document.getElementsByTagName("error").getLength() > 0;
+        } catch (IOException | SAXException e) {
+            return true;
+        }
+    }
+
+    private static int count(Element testSuite, String attribute) {
+        String value = testSuite.getAttribute(attribute);
+        try {
+            return value.isEmpty() ? 0 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static DocumentBuilder newDocumentBuilder() {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // Parsing errors are reported by exceptions, rather than also printed
+            builder.setErrorHandler(new DefaultHandler());
+            return builder;
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,26 +1,174 @@
 package com.github.lernejo.korekto.grader.travel_agency.parts;
 
-import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-class Dataset {
+/**
+ * Temperatures by country, indexed by case-folded country name.
+ * <p>
+ * Instances are immutable, and shared between parts and exercises.
+ * `-DDATASET_SOURCE` selects the dataset in use:
+ * <ul>
+ *     <li>`exercise` (default) the `countriesTempData.csv` file of the exercise **prediction-engine**, with all the countries the students use</li>
+ *     <li>`built-in` a few countries known by the grader</li>
+ *     <li>any other value is the path of such a CSV file</li>
+ * </ul>
+ * When the CSV file is missing or holds no country, the built-in dataset is used.
+ * CSV files are parsed once per content, whatever the number of exercises sharing it.
+ */
+final class Dataset {
 
-    static List<TempBoundaries> tempBoundaries = List.of(
-        new TempBoundaries("Brazil", 3, 9),
-        new TempBoundaries("Botswana", 19, 23),
-        new TempBoundaries("France", 8, 32),
-        new TempBoundaries("Guyana", 24, 36)
-    );
+    static final Dataset BUILT_IN = new Dataset(Map.of(
+        "Brazil", new double[]{3, 9},
+        "Botswana", new double[]{19, 23},
+        "France", new double[]{8, 32},
+        "Guyana", new double[]{24, 36}
+    ), List.of("Brazil", "Botswana", "France", "Guyana"));
 
-    static TempBoundaries getOne() {
-        return tempBoundaries.get(LaunchingContext.getRandomSource().nextInt(tempBoundaries.size() - 1));
+    private static final Logger logger = LoggerFactory.getLogger(Dataset.class);
+
+    private static final String EXERCISE_CSV = "prediction-engine/src/main/resources/countriesTempData.csv";
+    private static final Map<String, Dataset> loadedByDigest = new ConcurrentHashMap<>();
+
+    private final String[] countries;
+    private final double[][] temperatures;
+    private final TempBoundaries[] boundaries;
+    private final Map<String, Integer> index;
+
+    private Dataset(Map<String, double[]> temperaturesByCountry, List<String> order) {
+        int size = order.size();
+        this.countries = new String[size];
+        this.temperatures = new double[size][];
+        this.boundaries = new TempBoundaries[size];
+        this.index = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String country = order.get(i);
+            double[] countryTemperatures = temperaturesByCountry.get(country);
+            countries[i] = country;
+            temperatures[i] = countryTemperatures;
+            boundaries[i] = new TempBoundaries(country, Arrays.stream(countryTemperatures).min().orElseThrow(), Arrays.stream(countryTemperatures).max().orElseThrow());
+            index.put(country.toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    static Dataset forExercise(Path exerciseRoot) {
+        String source = System.getProperty("DATASET_SOURCE", "exercise");
+        if ("built-in".equalsIgnoreCase(source)) {
+            return BUILT_IN;
+        }
+        Path csv = "exercise".equalsIgnoreCase(source) ? exerciseRoot.resolve(EXERCISE_CSV) : Path.of(source);
+        try {
+            byte[] content = Files.readAllBytes(csv);
+            return loadedByDigest.computeIfAbsent(digest(content), d -> parse(new String(content, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            logger.warn("Using the built-in dataset, unable to read " + csv + ": " + e.getMessage());
+            return BUILT_IN;
+        }
+    }
+
+    /**
+     * Leniently reads a CSV where each line starts with a country name followed by temperatures.
+     * Separators can be `,` or `;`, cells which are not numbers (like headers) are ignored,
+     * as well as lines without any temperature.
+     * Lines of the same country are merged.
+     */
+    static Dataset parse(String csv) {
+        Map<String, double[]> temperaturesByCountry = new HashMap<>();
+        Map<String, String> countryNames = new LinkedHashMap<>();
+        for (String line : csv.split("\\R")) {
+            String separator = line.indexOf(';') >= 0 ? ";" : ",";
+            String[] cells = line.split(separator);
+            String country = unquote(cells[0]);
+            if (country.isEmpty() || country.startsWith("#")) {
+                continue;
+            }
+            double[] lineTemperatures = new double[cells.length - 1];
+            int count = 0;
+            for (int i = 1; i < cells.length; i++) {
+                try {
+                    lineTemperatures[count] = Double.parseDouble(unquote(cells[i]).replace(',', '.'));
+                    count++;
+                } catch (NumberFormatException e) {
+                    // Header or missing value
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            String key = country.toLowerCase(Locale.ROOT);
+            countryNames.putIfAbsent(key, country);
+            double[] previous = temperaturesByCountry.getOrDefault(key, new double[0]);
+            double[] merged = Arrays.copyOf(previous, previous.length + count);
+            System.arraycopy(lineTemperatures, 0, merged, previous.length, count);
+            temperaturesByCountry.put(key, merged);
+        }
+        if (countryNames.isEmpty()) {
+            return BUILT_IN;
+        }
+        Map<String, double[]> byName = new HashMap<>();
+        countryNames.forEach((key, name) -> byName.put(name, temperaturesByCountry.get(key)));
+        return new Dataset(byName, new ArrayList<>(countryNames.values()));
+    }
+
+    int size() {
+        return countries.length;
+    }
+
+    List<String> countries() {
+        return List.of(countries);
+    }
+
+    TempBoundaries getOne(RandomSupplier random) {
+        return boundaries[random.nextInt(Math.max(1, boundaries.length - 1))];
+    }
+
+    /**
+     * @return null if the country is unknown
+     */
+    TempBoundaries getByCountry(String country) {
+        Integer i = index.get(country.toLowerCase(Locale.ROOT));
+        return i == null ? null : boundaries[i];
+    }
+
+    /**
+     * @return the temperatures of the country, which must not be modified, or null if the country is unknown
+     */
+    double[] temperatures(String country) {
+        Integer i = index.get(country.toLowerCase(Locale.ROOT));
+        return i == null ? null : temperatures[i];
+    }
+
+    private static String unquote(String cell) {
+        String trimmed = cell.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return trimmed;
     }
 
-    static TempBoundaries getByCountry(String country) {
-        return tempBoundaries.stream()
-            .filter(tb -> tb.country.equalsIgnoreCase(country))
-            .findFirst().orElse(null);
+    private static String digest(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     record TempBoundaries(String country, double min, double max) {
@@ -0,0 +1,209 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Fills the local Maven repository shared by all the gradings of a batch, set with `-DMAVEN_REPO_LOCAL`, before exercises are built.
+ * <p>
+ * What an exercise downloads only depends on the external artifacts its POMs declare: parents, dependencies, plugins, extensions,
+ * along with the repositories and properties they may refer to.
+ * Exercises declaring the same ones, whatever their own names, are prefetched once for the whole batch:
+ * a marker in the repository records each prefetched set, so that other JVMs grading the batch skip it too.
+ * Only prefetches write into the shared repository, one at a time under a file lock in it,
+ * as builds are then run offline against it (see {@link MavenRunner}).
+ */
+class DependencyPrefetch {
+
+    private static final Logger logger = LoggerFactory.getLogger(DependencyPrefetch.class);
+    private static final String PREFETCH_GOALS = "dependency:resolve-plugins dependency:go-offline -DexcludeReactor=true " + Part1Grader.sbPluginGav + ":help";
+    private static final int MAX_MODULE_DEPTH = 3;
+    private static final Set<String> ARTIFACT_ELEMENTS = Set.of("parent", "dependency", "plugin", "extension");
+    private static final Set<String> REPOSITORY_ELEMENTS = Set.of("repository", "pluginRepository");
+    private static final Map<String, CompletableFuture<Boolean>> prefetchesByArtifacts = new ConcurrentHashMap<>();
+    // A file lock is held by the JVM as a whole, threads of this one are kept from asking for it twice
+    private static final ReentrantLock repositoryLock = new ReentrantLock();
+
+    /**
+     * A failed prefetch is only logged, the offline build then naming the artifact missing from the shared repository.
+     */
+    static void prefetch(LaunchingContext context) {
+        Path root = context.getExercise().getRoot();
+        String artifactsDigest;
+        try {
+            artifactsDigest = digest(declaredArtifacts(root));
+        } catch (IOException e) {
+            logger.warn("Unable to read the POMs of " + root + ": " + e.getMessage());
+            return;
+        }
+        CompletableFuture<Boolean> prefetch = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = prefetchesByArtifacts.putIfAbsent(artifactsDigest, prefetch);
+        if (existing != null) {
+            existing.join();
+            return;
+        }
+        boolean prefetched = prefetchOnce(context, artifactsDigest);
+        if (!prefetched) {
+            logger.warn("Unable to prefetch the dependencies of " + root.getFileName() + " in " + context.mavenRepoLocal);
+            // Let another exercise declaring the same artifacts try again
+            prefetchesByArtifacts.remove(artifactsDigest);
+        }
+        prefetch.complete(prefetched);
+    }
+
+    private static boolean prefetchOnce(LaunchingContext context, String artifactsDigest) {
+        Path markers = Path.of(context.mavenRepoLocal).resolve(".prefetched");
+        Path done = markers.resolve(artifactsDigest + ".done");
+        if (Files.exists(done)) {
+            return true;
+        }
+        repositoryLock.lock();
+        try {
+            Files.createDirectories(markers);
+            try (FileChannel lockChannel = FileChannel.open(markers.resolve("repository.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                if (Files.exists(done)) {
+                    return true;
+                }
+                long startTime = System.currentTimeMillis();
+                boolean prefetched = MavenRunner.executeInSharedRepository(context, PREFETCH_GOALS);
+                logger.debug("Prefetched dependencies of " + context.getExercise().getRoot().getFileName() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+                if (prefetched) {
+                    Files.createFile(done);
+                }
+                return prefetched;
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to prefetch dependencies in " + context.mavenRepoLocal + ": " + e.getMessage());
+            return false;
+        } finally {
+            repositoryLock.unlock();
+        }
+    }
+
+    /**
+     * External artifacts declared by the POMs of the exercise, build outputs and hidden directories excepted.
+     * Artifacts of the project itself are left out, so that student projects named differently share their prefetch.
+     *
+     * @throws IOException if a POM cannot be read or parsed
+     */
+    static SortedSet<String> declaredArtifacts(Path root) throws IOException {
+        List<Element> projects = new ArrayList<>();
+        for (Path pom : poms(root)) {
+            try {
+                projects.add(BuildReports.newDocumentBuilder().parse(pom.toFile()).getDocumentElement());
+            } catch (SAXException e) {
+                throw new IOException("Unable to parse " + pom + ": " + e.getMessage(), e);
+            }
+        }
+        Set<String> projectArtifactIds = new HashSet<>();
+        for (Element project : projects) {
+            projectArtifactIds.add(childText(project, "artifactId"));
+        }
+        SortedSet<String> artifacts = new TreeSet<>();
+        for (Element project : projects) {
+            collect(project, projectArtifactIds, artifacts);
+        }
+        return artifacts;
+    }
+
+    private static void collect(Element element, Set<String> projectArtifactIds, SortedSet<String> artifacts) {
+        String name = element.getTagName();
+        if (ARTIFACT_ELEMENTS.contains(name)) {
+            String artifactId = childText(element, "artifactId");
+            if (!projectArtifactIds.contains(artifactId)) {
+                artifacts.add(name + " " + childText(element, "groupId") + ':' + artifactId + ':' + childText(element, "version")
+                    + ':' + childText(element, "type") + ':' + childText(element, "classifier"));
+            }
+        } else if (REPOSITORY_ELEMENTS.contains(name)) {
+            artifacts.add(name + " " + childText(element, "url"));
+        } else if (name.equals("properties")) {
+            for (Element property : children(element)) {
+                artifacts.add("property " + property.getTagName() + '=' + property.getTextContent().trim());
+            }
+            return;
+        }
+        for (Element child : children(element)) {
+            collect(child, projectArtifactIds, artifacts);
+        }
+    }
+
+    private static String childText(Element parent, String childName) {
+        for (Element child : children(parent)) {
+            if (child.getTagName().equals(childName)) {
+                return child.getTextContent().trim();
+            }
+        }
+        return "";
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> children = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) nodes.item(i));
+            }
+        }
+        return children;
+    }
+
+    private static List<Path> poms(Path root) throws IOException {
+        try (Stream<Path> files = Files.find(root, MAX_MODULE_DEPTH + 1, (p, attributes) -> attributes.isRegularFile() && p.getFileName().toString().equals("pom.xml"))) {
+            return files
+                .filter(p -> !isIgnored(root.relativize(p)))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static boolean isIgnored(Path relativePom) {
+        for (Path segment : relativePom) {
+            String name = segment.toString();
+            if (name.startsWith(".") || name.equals("target")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String digest(SortedSet<String> artifacts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String artifact : artifacts) {
+                digest.update(artifact.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
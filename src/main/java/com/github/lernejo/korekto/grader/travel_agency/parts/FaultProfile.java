@@ -0,0 +1,92 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Delays and faults applied by the {@link PredictionServer} stub before answering a request.
+ * <p>
+ * Each draw only depends on the seed, the country and how many requests for this country came before,
+ * so that a seeded grading injects the same faults whatever the order in which concurrent requests are served.
+ * A faulty response is always followed by a proper one for the same country, so that a single retry is enough.
+ *
+ * @param fixedDelayMillis      delay applied to every response
+ * @param jitterMillis          additional random delay, between 0 and this value
+ * @param serverErrorRate       ratio of requests answered with a `503` status
+ * @param connectionDropRate    ratio of requests whose connection is closed without any response
+ * @param seed                  seed of the draws, see {@link #seededBy(RandomSupplier)}
+ */
+record FaultProfile(long fixedDelayMillis, long jitterMillis, double serverErrorRate, double connectionDropRate, long seed) {
+
+    static final FaultProfile NONE = new FaultProfile(0L, 0L, 0D, 0D, 0L);
+
+    static FaultProfile delay(long fixedDelayMillis, long jitterMillis) {
+        return new FaultProfile(fixedDelayMillis, jitterMillis, 0D, 0D, 0L);
+    }
+
+    static FaultProfile serverErrors(double rate) {
+        return new FaultProfile(0L, 0L, rate, 0D, 0L);
+    }
+
+    static FaultProfile connectionDrops(double rate) {
+        return new FaultProfile(0L, 0L, 0D, rate, 0L);
+    }
+
+    /**
+     * Only profiles with random delays or faults draw their seed, so that the others do not shift the draws of the next parts.
+     */
+    FaultProfile seededBy(RandomSupplier random) {
+        if (jitterMillis == 0L && serverErrorRate == 0D && connectionDropRate == 0D) {
+            return this;
+        }
+        return new FaultProfile(fixedDelayMillis, jitterMillis, serverErrorRate, connectionDropRate, random.nextInt());
+    }
+
+    /**
+     * @param attempt number of requests for the same country received before this one, in the current scenario
+     */
+    long drawDelayMillis(String country, int attempt) {
+        return fixedDelayMillis + (jitterMillis > 0 ? random(country, attempt, 0).nextLong(jitterMillis + 1) : 0L);
+    }
+
+    /**
+     * @param attempt number of requests for the same country received before this one, in the current scenario
+     */
+    Fault drawFault(String country, int attempt) {
+        if (serverErrorRate == 0D && connectionDropRate == 0D) {
+            return Fault.NONE;
+        }
+        Fault previous = Fault.NONE;
+        for (int i = 0; i <= attempt; i++) {
+            previous = previous != Fault.NONE ? Fault.NONE : drawFault(random(country, i, 1).nextDouble());
+        }
+        return previous;
+    }
+
+    private Fault drawFault(double draw) {
+        if (draw < connectionDropRate) {
+            return Fault.CONNECTION_DROP;
+        } else if (draw < connectionDropRate + serverErrorRate) {
+            return Fault.SERVER_ERROR;
+        } else {
+            return Fault.NONE;
+        }
+    }
+
+    private SplittableRandom random(String country, int attempt, int stream) {
+        String key = country == null ? "" : country.toLowerCase(Locale.ROOT);
+        return new SplittableRandom(seed ^ (key.hashCode() * 0x9E37_79B9_7F4A_7C15L) ^ ((long) attempt << 32) ^ stream);
+    }
+
+    enum Fault {
+        NONE,
+        SERVER_ERROR,
+        /**
+         * The JDK HTTP server gives no access to its sockets, so the connection is closed (FIN) rather than reset (RST),
+         * which clients see alike: an I/O error before any response.
+         */
+        CONNECTION_DROP
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
+import com.github.lernejo.korekto.grader.travel_agency.TravelAgencyApiClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lazily generates inscriptions along with the countries the **site** should answer them with, reproducible from a seed.
+ * <p>
+ * Each country is given a temperature which is a multiple of 10, and minimum temperature distances are never one,
+ * so that no country sits on the boundary of an inscription.
+ * User countries, weather expectations and distances are spread evenly: consecutive inscriptions go through all the countries,
+ * then through both expectations, then through all the distances.
+ */
+class InscriptionGenerator {
+
+    private static final int[] TEMPERATURES = {-10, 0, 10, 20, 30, 40};
+    private static final int[] DISTANCES = {4, 5, 6, 14, 15, 16};
+
+    private final long seed;
+    private final String[] countries;
+    private final Map<String, Integer> temperatureByCountry = new HashMap<>();
+    private final String[] countriesByTemperature;
+    private final int[] sortedTemperatures;
+    private final Map<MatchingKey, Set<String>> matchingCountriesCache = new ConcurrentHashMap<>();
+
+    InscriptionGenerator(long seed, List<String> countries) {
+        this.seed = seed;
+        Random random = new Random(seed);
+        List<String> shuffled = countries.stream().map(c -> c.toLowerCase(Locale.ROOT)).distinct().collect(Collectors.toCollection(ArrayList::new));
+        Collections.shuffle(shuffled, random);
+        this.countries = shuffled.toArray(String[]::new);
+        for (int i = 0; i < this.countries.length; i++) {
+            temperatureByCountry.put(this.countries[i], TEMPERATURES[i % TEMPERATURES.length]);
+        }
+        this.countriesByTemperature = Arrays.stream(this.countries)
+            .sorted(Comparator.comparingInt(temperatureByCountry::get))
+            .toArray(String[]::new);
+        this.sortedTemperatures = Arrays.stream(countriesByTemperature).mapToInt(temperatureByCountry::get).toArray();
+    }
+
+    /**
+     * @return an infinite sequential stream, the same for a given seed and countries
+     */
+    Stream<GeneratedInscription> stream() {
+        RandomSupplier random = RandomSupplier.of(new Random(seed ^ 0x5DEECE66DL));
+        return Stream.iterate(0L, i -> i + 1).map(i -> generate(i, random));
+    }
+
+    /**
+     * @return the stub behavior matching the temperatures of the generated countries, other countries being unknown
+     */
+    Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction() {
+        return country -> Optional.ofNullable(temperatureByCountry.get(country.toLowerCase(Locale.ROOT)))
+            .map(temperature -> Part6Grader.buildPrediction(country, temperature));
+    }
+
+    private GeneratedInscription generate(long index, RandomSupplier random) {
+        int n = countries.length;
+        String userCountry = countries[(int) (index % n)];
+        TravelAgencyApiClient.WeatherExpectation weatherExpectation = (index / n) % 2 == 0
+            ? TravelAgencyApiClient.WeatherExpectation.WARMER
+            : TravelAgencyApiClient.WeatherExpectation.COLDER;
+        int distance = DISTANCES[(int) ((index / (2L * n)) % DISTANCES.length)];
+        String userName = random.nextUuid().toString();
+        TravelAgencyApiClient.Inscription inscription = new TravelAgencyApiClient.Inscription(
+            userName + "@lernejo.fr",
+            userName,
+            userCountry,
+            weatherExpectation,
+            distance);
+        return new GeneratedInscription(inscription, matchingCountries(userCountry, weatherExpectation, distance));
+    }
+
+    /**
+     * Countries being sorted by temperature, matching ones are a range of them found by binary search,
+     * and there are only a few distinct sets to compute whatever the number of inscriptions.
+     */
+    private Set<String> matchingCountries(String userCountry, TravelAgencyApiClient.WeatherExpectation weatherExpectation, int distance) {
+        return matchingCountriesCache.computeIfAbsent(new MatchingKey(userCountry, weatherExpectation, distance), key -> {
+            int userTemperature = temperatureByCountry.get(userCountry);
+            List<String> matching;
+            if (weatherExpectation == TravelAgencyApiClient.WeatherExpectation.WARMER) {
+                int from = firstIndexAbove(userTemperature + distance);
+                matching = Arrays.asList(countriesByTemperature).subList(from, countriesByTemperature.length);
+            } else {
+                int to = firstIndexAbove(userTemperature - distance);
+                matching = Arrays.asList(countriesByTemperature).subList(0, to);
+            }
+            return matching.stream().filter(c -> !c.equals(userCountry)).collect(Collectors.toUnmodifiableSet());
+        });
+    }
+
+    /**
+     * @return the index of the first country warmer than the given temperature
+     */
+    private int firstIndexAbove(int temperature) {
+        int low = 0;
+        int high = sortedTemperatures.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedTemperatures[middle] <= temperature) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    record GeneratedInscription(TravelAgencyApiClient.Inscription inscription, Set<String> expectedMatchingCountries) {
+    }
+
+    private record MatchingKey(String userCountry, TravelAgencyApiClient.WeatherExpectation weatherExpectation, int distance) {
+    }
+}
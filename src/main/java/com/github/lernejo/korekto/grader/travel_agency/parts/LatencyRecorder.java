@@ -0,0 +1,45 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records a known number of latencies from concurrent threads and computes their distribution.
+ */
+class LatencyRecorder {
+
+    private final long[] latenciesNanos;
+    private final AtomicInteger count = new AtomicInteger();
+
+    LatencyRecorder(int capacity) {
+        this.latenciesNanos = new long[capacity];
+    }
+
+    void record(long latencyNanos) {
+        int index = count.getAndIncrement();
+        if (index < latenciesNanos.length) {
+            latenciesNanos[index] = latencyNanos;
+        }
+    }
+
+    Distribution distribution() {
+        long[] sorted = Arrays.copyOf(latenciesNanos, Math.min(count.get(), latenciesNanos.length));
+        Arrays.sort(sorted);
+        return new Distribution(percentileMillis(sorted, 0.5D), percentileMillis(sorted, 0.95D), percentileMillis(sorted, 0.99D));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000D;
+    }
+
+    record Distribution(double p50, double p95, double p99) {
+        @Override
+        public String toString() {
+            return String.format("p50=%.1f ms, p95=%.1f ms, p99=%.1f ms", p50, p95, p99);
+        }
+    }
+}
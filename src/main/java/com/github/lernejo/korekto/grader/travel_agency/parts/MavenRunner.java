@@ -0,0 +1,158 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.GradingMetrics;
+import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.events.MavenInvocationEvent;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenInvocationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs Maven goals on the exercise.
+ * <p>
+ * By default (`-DMAVEN_BACKEND=forked`) goals are run by the toolkit {@link MavenExecutor}, which forks a new Maven JVM each time.
+ * With `-DMAVEN_BACKEND=mvnd`, build goals are sent to the Maven daemon instead, which keeps a warm reactor across goals and exercises.
+ * A daemon build lasting more than `-DMVND_TIMEOUT` seconds (600 by default), such as one with a hanging test, is stopped and fails.
+ * <p>
+ * With `-DMAVEN_REPO_LOCAL`, this local repository is shared by all the gradings of a batch and filled by {@link DependencyPrefetch}.
+ * Goals are then run offline, so that their durations do not depend on the network, each exercise installing its own artifacts
+ * in a repository of its own, in the workspace, chained to the shared one which it only reads (Maven 3.9 or later).
+ * An artifact missing from the shared repository fails the build, which names it (see {@link BuildReports#missingArtifact(Path)}).
+ */
+class MavenRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MavenRunner.class);
+
+    /**
+     * @return true if the build succeeded
+     */
+    static boolean executeGoal(LaunchingContext context, String... goals) {
+        return execute(context, withRepositoryOptions(context, goals));
+    }
+
+    /**
+     * Long-running goals are always run by the toolkit {@link MavenExecutor}:
+     * the daemon would fork the application out of reach of the client process, so that it could not be stopped reliably.
+     */
+    static MavenExecutionHandle executeGoalAsync(LaunchingContext context, String goal) {
+        return MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(), withRepositoryOptions(context, goal)[0]);
+    }
+
+    /**
+     * Runs goals online, writing into the shared repository.
+     *
+     * @return true if the build succeeded
+     */
+    static boolean executeInSharedRepository(LaunchingContext context, String goals) {
+        return execute(context, "-Dmaven.repo.local='" + context.mavenRepoLocal + "' " + goals);
+    }
+
+    private static boolean execute(LaunchingContext context, String... goals) {
+        MavenInvocationEvent event = new MavenInvocationEvent();
+        event.begin();
+        boolean successful = GradingMetrics.INSTANCE.time(GradingMetrics.Phase.MAVEN_BUILD, () -> {
+            if (context.mavenDaemonExecutable != null) {
+                return executeWithDaemon(context, goals);
+            }
+            MavenInvocationResult result = MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(), goals);
+            return result.getStatus() == MavenInvocationResult.Status.OK;
+        });
+        if (event.shouldCommit()) {
+            event.exercise = context.getExercise().getRoot().getFileName().toString();
+            event.goals = String.join(" ", goals);
+            event.backend = context.mavenDaemonExecutable != null ? "mvnd" : "forked";
+            event.successful = successful;
+            event.commit();
+        }
+        return successful;
+    }
+
+    /**
+     * Options are added in front of the first goal, as any other option given along with goals.
+     */
+    private static String[] withRepositoryOptions(LaunchingContext context, String... goals) {
+        if (context.mavenRepoLocal == null || goals.length == 0) {
+            return goals;
+        }
+        Path exerciseRepository = context.getConfiguration().getWorkspace().resolve("repository-" + context.getExercise().getRoot().getFileName());
+        String[] optionedGoals = goals.clone();
+        optionedGoals[0] = "-o -Dmaven.repo.local='" + exerciseRepository + "' -Daether.chainedLocalRepository.tail='" + context.mavenRepoLocal + "' " + goals[0];
+        return optionedGoals;
+    }
+
+    private static boolean executeWithDaemon(LaunchingContext context, String... goals) {
+        Path root = context.getExercise().getRoot();
+        List<String> command = new ArrayList<>();
+        command.add(context.mavenDaemonExecutable);
+        command.add("-B");
+        for (String goal : goals) {
+            command.addAll(tokenize(goal));
+        }
+        Path logFile = context.getConfiguration().getWorkspace().resolve("mvnd-" + root.getFileName() + ".log");
+        logger.debug("Running " + command + " in " + root + ", output in " + logFile);
+        try {
+            Process process = new ProcessBuilder(command)
+                .directory(root.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile()))
+                .start();
+            if (!process.waitFor(context.mavenDaemonTimeout, TimeUnit.SECONDS)) {
+                logger.warn("Stopping " + command + " in " + root + " after " + context.mavenDaemonTimeout + " sec.");
+                // Stopping the client cancels its build in the daemon
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException e) {
+            logger.warn("Unable to run " + context.mavenDaemonExecutable + ": " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Splits a goal string as a shell would, honoring single and double quotes.
+     */
+    static List<String> tokenize(String goal) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inToken = false;
+        char quote = 0;
+        for (char c : goal.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+}
@@ -3,14 +3,15 @@ package com.github.lernejo.korekto.grader.travel_agency.parts;
 import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
 import com.github.lernejo.korekto.toolkit.GradePart;
 import com.github.lernejo.korekto.toolkit.PartGrader;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenInvocationResult;
 import com.github.lernejo.korekto.toolkit.thirdparty.maven.PomModifier;
 import com.github.lernejo.tack.http.HttpTack;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 public class Part1Grader implements PartGrader<LaunchingContext> {
 
@@ -41,23 +42,70 @@ public class Part1Grader implements PartGrader<LaunchingContext> {
             HttpTack.installOnSources(sitePath.resolve("src/main/java"));
         }
 
-        MavenInvocationResult invocationResult = MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(), "clean", "test-compile");
-        if (invocationResult.getStatus() != MavenInvocationResult.Status.OK) {
-            context.markAsCompilationFailed();
-            return result(List.of("Compilation failed, see `mvn test-compile`"), 0.0D);
+        if (context.mavenRepoLocal != null) {
+            DependencyPrefetch.prefetch(context);
+        }
+
+        Path root = context.getExercise().getRoot();
+        Path buildLog = context.getConfiguration().getWorkspace().resolve("build-" + root.getFileName() + ".log");
+        try {
+            Files.deleteIfExists(buildLog);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (context.singlePassBuild) {
+            return gradeInSinglePass(context, buildLog);
+        }
+
+        if (!MavenRunner.executeGoal(context, "--log-file '" + buildLog + "' clean", "test-compile")) {
+            return compilationFailed(context, buildLog);
         } else {
             // Download all needed deps without timer
-            MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(), sbPluginGav + ":help");
+            MavenRunner.executeGoal(context, sbPluginGav + ":help");
             // Install project dependencies to be able to execute a module solely even if it depends on another
-            MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(), "install");
+            MavenRunner.executeGoal(context, "install");
 
-            MavenInvocationResult testRun = MavenExecutor.executeGoal(context.getExercise(), context.getConfiguration().getWorkspace(), "verify");
-            if (testRun.getStatus() != MavenInvocationResult.Status.OK) {
-                context.markAsTestFailed();
-                return result(List.of("There are test failures, see `mvn verify`"), maxGrade() / 2);
+            if (!MavenRunner.executeGoal(context, "--log-file '" + buildLog + "' verify")) {
+                return BuildReports.missingArtifact(buildLog).isPresent() ? compilationFailed(context, buildLog) : testFailed(context);
             } else {
                 return result(List.of(), maxGrade());
             }
         }
     }
+
+    /**
+     * Downloads the Spring Boot plugin, compiles, tests and installs in a single Maven invocation.
+     * Test failures do not stop the build, so that every module gets compiled whatever the tests of the others,
+     * then the build output tells whether the compilation of any module failed, main or test sources, as `test-compile` would,
+     * and test reports whether tests failed.
+     */
+    private GradePart gradeInSinglePass(LaunchingContext context, Path buildLog) {
+        Path root = context.getExercise().getRoot();
+        boolean built = MavenRunner.executeGoal(context, "--fail-at-end -Dmaven.test.failure.ignore=true --log-file '" + buildLog + "' " + sbPluginGav + ":help", "clean", "install");
+        if (!built && (BuildReports.missingArtifact(buildLog).isPresent() || BuildReports.hasCompilationFailed(root, buildLog))) {
+            return compilationFailed(context, buildLog);
+        } else if (!built || BuildReports.hasTestFailures(root)) {
+            return testFailed(context);
+        } else {
+            return result(List.of(), maxGrade());
+        }
+    }
+
+    /**
+     * An artifact missing from the shared repository is not the exercise's fault as much as the batch's, so that its grades are not reused.
+     */
+    private GradePart compilationFailed(LaunchingContext context, Path buildLog) {
+        context.markAsCompilationFailed();
+        Optional<String> missingArtifact = BuildReports.missingArtifact(buildLog);
+        if (missingArtifact.isPresent()) {
+            context.markAsTransientFailure();
+            return result(List.of("Dependencies could not be resolved, `" + missingArtifact.get() + "` is missing from the shared Maven repository"), 0.0D);
+        }
+        return result(List.of("Compilation failed, see `mvn test-compile`"), 0.0D);
+    }
+
+    private GradePart testFailed(LaunchingContext context) {
+        context.markAsTestFailed();
+        return result(List.of("There are test failures, see `mvn verify`"), maxGrade() / 2);
+    }
 }
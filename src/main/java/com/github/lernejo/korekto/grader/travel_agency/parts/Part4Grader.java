@@ -1,12 +1,11 @@
 package com.github.lernejo.korekto.grader.travel_agency.parts;
 
 import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.Parsed;
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
 import com.github.lernejo.korekto.grader.travel_agency.TravelAgencyApiClient;
 import com.github.lernejo.korekto.toolkit.GradePart;
 import com.github.lernejo.korekto.toolkit.PartGrader;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
 import retrofit2.Response;
 
 import java.io.IOException;
@@ -14,7 +13,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.TimeUnit;
 
 public class Part4Grader implements PartGrader<LaunchingContext> {
 
@@ -34,16 +32,16 @@ public class Part4Grader implements PartGrader<LaunchingContext> {
             return result(List.of("Not trying to start **site** server as compilation failed"), 0.0D);
         }
 
-        try (PredictionServer predictionServer = new PredictionServer(context.predictionServerPort);
-             MavenExecutionHandle ignored = MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(),
-                 Part1Grader.sbPluginGav + ":run -pl :site -Dspring-boot.run.jvmArguments='-Dserver.port=" + context.siteServerPort + " -DtackEnabled=true  -DtackRedirectPort=" + context.predictionServerPort + "'")) {
-            Ports.waitForPortToBeListenedTo(context.siteServerPort, TimeUnit.SECONDS, context.serverStartTimeout);
+        try {
+            Dataset dataset = Dataset.forExercise(context.getExercise().getRoot());
+            RandomSupplier random = context.randomSource(this);
+            SiteServer.obtain(context, random).useScenario(PredictionServer.defaultPrediction(dataset, random));
 
             double grade = maxGrade();
             List<String> errors = new ArrayList<>();
 
 
-            TravelAgencyApiClient.Inscription inscription = generateInscription();
+            TravelAgencyApiClient.Inscription inscription = generateInscription(dataset, random);
 
             String inscriptionQuery = "POST `/api/inscription`";
             try {
@@ -54,21 +52,23 @@ public class Part4Grader implements PartGrader<LaunchingContext> {
                 }
             } catch (IOException e) {
                 grade = 0;
+                context.markAsTransientFailure();
                 errors.add("Failed to call **site** " + inscriptionQuery + ": " + e.getMessage());
             }
 
             String travelsQuery = "GET `/api/travels?userName=" + inscription.userName() + "`";
-            try (var exHolder = context.newExceptionHolder()) {
-                Response<List<TravelAgencyApiClient.Travel>> travelsResponse = context.travelAgencyApiClient.getTravels(inscription.userName()).execute();
+            try {
+                Response<Parsed<List<TravelAgencyApiClient.Travel>>> travelsResponse = context.travelAgencyApiClient.getTravels(inscription.userName()).execute();
                 if (!travelsResponse.isSuccessful()) {
                     grade -= maxGrade() / 2;
                     errors.add("Unsuccessful response of " + travelsQuery + ": " + travelsResponse.code());
-                } else if (exHolder.getLatestDeserializationProblem() != null) {
+                } else if (Parsed.isMissingOrInvalid(travelsResponse.body())) {
                     grade -= maxGrade() * (2.0 / 3);
-                    errors.add("Bad response payload expected something like:\n```\n" + TravelAgencyApiClient.SAMPLE_RESPONSE_PAYLOAD + "\n```\nBut got:\n```\n" + exHolder.getLatestDeserializationProblem().rawBody() + "\n```");
+                    errors.add("Bad response payload expected something like:\n```\n" + TravelAgencyApiClient.SAMPLE_RESPONSE_PAYLOAD + "\n```\nBut got:\n```\n" + Parsed.rawBodyOf(travelsResponse.body()) + "\n```");
                 }
             } catch (IOException e) {
                 grade = 0;
+                context.markAsTransientFailure();
                 errors.add("Failed to call **site** " + travelsQuery + ": " + e.getMessage());
             }
 
@@ -78,21 +78,23 @@ public class Part4Grader implements PartGrader<LaunchingContext> {
 
             return result(errors, grade);
         } catch (CancellationException e) {
+            context.markAsTransientFailure();
             context.setSiteServerFailed();
             return result(List.of("Server failed to start within " + context.serverStartTimeout + " sec."), 0.0D);
-        } finally {
-            Ports.waitForPortToBeFreed(context.siteServerPort, TimeUnit.SECONDS, 5L);
+        } catch (ServerExitedException e) {
+            context.setSiteServerFailed();
+            return result(List.of(e.getMessage()), 0.0D);
         }
     }
 
-    private static TravelAgencyApiClient.Inscription generateInscription() {
-        String username = LaunchingContext.getRandomSource().nextUuid().toString().toLowerCase(Locale.ROOT);
+    private static TravelAgencyApiClient.Inscription generateInscription(Dataset dataset, RandomSupplier random) {
+        String username = random.nextUuid().toString().toLowerCase(Locale.ROOT);
         return new TravelAgencyApiClient.Inscription(
             username + "@lernejo.fr",
             username,
-            Dataset.getOne().country(),
-            LaunchingContext.getRandomSource().nextBoolean() ? TravelAgencyApiClient.WeatherExpectation.WARMER : TravelAgencyApiClient.WeatherExpectation.COLDER,
-            LaunchingContext.getRandomSource().nextInt(6) + 4
+            dataset.getOne(random).country(),
+            random.nextBoolean() ? TravelAgencyApiClient.WeatherExpectation.WARMER : TravelAgencyApiClient.WeatherExpectation.COLDER,
+            random.nextInt(6) + 4
         );
     }
 }
@@ -1,24 +1,43 @@
 package com.github.lernejo.korekto.grader.travel_agency.parts;
 
 import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.Parsed;
 import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
 import com.github.lernejo.korekto.grader.travel_agency.parts.Dataset.TempBoundaries;
 import com.github.lernejo.korekto.toolkit.GradePart;
 import com.github.lernejo.korekto.toolkit.PartGrader;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-
+/**
+ * Checks the prediction of a random country of the {@link Dataset}.
+ * <p>
+ * With `-DPREDICTION_ENGINE_SWEEP=true`, every country of the dataset is then queried concurrently,
+ * within `-DPREDICTION_ENGINE_SWEEP_TIMEOUT` seconds (30 by default).
+ */
 public class Part5Grader implements PartGrader<LaunchingContext> {
 
+    private static final Logger logger = LoggerFactory.getLogger(Part5Grader.class);
+    private static final int MAX_REPORTED_COUNTRIES = 5;
+
+    private final boolean sweep = Boolean.parseBoolean(System.getProperty("PREDICTION_ENGINE_SWEEP", "false"));
+    private final long sweepTimeoutSeconds = Long.parseLong(System.getProperty("PREDICTION_ENGINE_SWEEP_TIMEOUT", "30"));
+
     @Override
     public String name() {
         return "Part 5 - Prediction API";
@@ -35,34 +54,35 @@ public class Part5Grader implements PartGrader<LaunchingContext> {
             return result(List.of("Not trying to start **prediction-engine** server as compilation failed"), 0.0D);
         }
 
-        try (MavenExecutionHandle ignored = MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(),
-            Part1Grader.sbPluginGav + ":run -pl :prediction-engine -Dspring-boot.run.jvmArguments='-Dserver.port=" + context.predictionServerPort + "'")) {
-            Ports.waitForPortToBeListenedTo(context.predictionServerPort, TimeUnit.SECONDS, context.serverStartTimeout);
+        try (ServerHandle server = ServerLauncher.launch(context, "prediction-engine", context.predictionEngineServerPort, Map.of())) {
+            ServerLauncher.awaitReady(context, "prediction-engine", context.predictionEngineServerPort, server);
 
             double grade = maxGrade();
             List<String> errors = new ArrayList<>();
 
-            TempBoundaries tempBoundaries = Dataset.getOne();
+            Dataset dataset = Dataset.forExercise(context.getExercise().getRoot());
+            TempBoundaries tempBoundaries = dataset.getOne(context.randomSource(this));
             String query = "GET `/api/temperature?country=" + tempBoundaries.country() + "`";
-            try (var exHolder = context.newExceptionHolder()) {
-                Response<PredictionApiClient.Prediction> response = context.predictionApiClient.getTemperature(tempBoundaries.country()).execute();
+            try {
+                Response<Parsed<PredictionApiClient.Prediction>> response = context.predictionApiClient.getTemperature(tempBoundaries.country()).execute();
                 if (!response.isSuccessful()) {
                     grade = 0;
                     errors.add("Unsuccessful response of " + query + ": " + response.code());
-                } else if (exHolder.getLatestDeserializationProblem() != null) {
+                } else if (Parsed.isMissingOrInvalid(response.body())) {
                     grade -= maxGrade() * (2.0 / 3);
-                    errors.add("Bad response payload expected something like:\n```\n" + PredictionApiClient.SAMPLE_RESPONSE_PAYLOAD + "\n```\nBut got:\n```\n" + exHolder.getLatestDeserializationProblem().rawBody() + "\n```");
+                    errors.add("Bad response payload expected something like:\n```\n" + PredictionApiClient.SAMPLE_RESPONSE_PAYLOAD + "\n```\nBut got:\n```\n" + Parsed.rawBodyOf(response.body()) + "\n```");
                 } else {
-                    if (!tempBoundaries.country().equalsIgnoreCase(response.body().country())) {
+                    PredictionApiClient.Prediction prediction = response.body().value();
+                    if (!tempBoundaries.country().equalsIgnoreCase(prediction.country())) {
                         grade -= maxGrade() / 2;
                         errors.add(query + " should respond with a message containing the same country that was passed in the query, " +
-                            "expected `" + tempBoundaries.country() + "` but get `" + response.body().country() + "`");
+                            "expected `" + tempBoundaries.country() + "` but get `" + prediction.country() + "`");
                     }
-                    if (response.body().temperatures().size() != 2) {
+                    if (prediction.temperatures().size() != 2) {
                         grade -= maxGrade() / 2;
-                        errors.add(query + " should respond with a message containing temperatures of the last *two* days, but got " + response.body().temperatures().size() + " temperature(s)");
+                        errors.add(query + " should respond with a message containing temperatures of the last *two* days, but got " + prediction.temperatures().size() + " temperature(s)");
                     }
-                    for (PredictionApiClient.TempPoint tempPoint : response.body().temperatures()) {
+                    for (PredictionApiClient.TempPoint tempPoint : prediction.temperatures()) {
                         if (tempPoint.temperature() < tempBoundaries.min() || tempPoint.temperature() > tempBoundaries.max()) {
                             grade -= maxGrade() / 2;
                             errors.add(query + " should respond with temperatures generated from the given `countriesTempData.csv` file, " +
@@ -73,13 +93,107 @@ public class Part5Grader implements PartGrader<LaunchingContext> {
                     }
                 }
             } catch (IOException e) {
+                context.markAsTransientFailure();
                 return result(List.of("Failed to call **prediction-engine** API: " + e.getMessage()), 0.0D);
             }
+            if (sweep && errors.isEmpty()) {
+                Sweep sweepResult = sweep(context, dataset);
+                logger.info("Prediction-engine sweep: " + sweepResult.summary());
+                if (sweepResult.valid() < sweepResult.total()) {
+                    grade -= maxGrade() / 2;
+                    errors.add("Only " + sweepResult.summary()
+                        + (sweepResult.invalidSamples().isEmpty() ? "" : ", for instance:\n\t* " + String.join("\n\t* ", sweepResult.invalidSamples())));
+                }
+            }
             return result(errors, grade);
         } catch (CancellationException e) {
+            context.markAsTransientFailure();
             return result(List.of("Server failed to start within " + context.serverStartTimeout + " sec."), 0.0D);
-        } finally {
-            Ports.waitForPortToBeFreed(context.predictionServerPort, TimeUnit.SECONDS, 5L);
+        } catch (ServerExitedException e) {
+            return result(List.of(e.getMessage()), 0.0D);
+        }
+    }
+
+    /**
+     * Queries all the countries at once, relying on the client dispatcher to pipeline the requests.
+     */
+    private Sweep sweep(LaunchingContext context, Dataset dataset) {
+        List<String> countries = dataset.countries();
+        LatencyRecorder recorder = new LatencyRecorder(countries.size());
+        AtomicInteger valid = new AtomicInteger();
+        Queue<String> invalid = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(countries.size());
+        List<Call<Parsed<PredictionApiClient.Prediction>>> calls = new ArrayList<>(countries.size());
+        long start = System.nanoTime();
+        for (String country : countries) {
+            Call<Parsed<PredictionApiClient.Prediction>> call = context.predictionApiClient.getTemperature(country);
+            calls.add(call);
+            long callStart = System.nanoTime();
+            call.enqueue(new Callback<>() {
+                @Override
+                public void onResponse(Call<Parsed<PredictionApiClient.Prediction>> call, Response<Parsed<PredictionApiClient.Prediction>> response) {
+                    recorder.record(System.nanoTime() - callStart);
+                    String problem = validate(dataset.getByCountry(country), response);
+                    if (problem == null) {
+                        valid.incrementAndGet();
+                    } else {
+                        invalid.add("**" + country + "**: " + problem);
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(Call<Parsed<PredictionApiClient.Prediction>> call, Throwable t) {
+                    recorder.record(System.nanoTime() - callStart);
+                    invalid.add("**" + country + "**: " + t.getMessage());
+                    done.countDown();
+                }
+            });
+        }
+        boolean completed;
+        try {
+            completed = done.await(sweepTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            completed = false;
+        }
+        if (!completed) {
+            calls.forEach(Call::cancel);
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000D;
+        return new Sweep(countries.size(), valid.get(), invalid.stream().limit(MAX_REPORTED_COUNTRIES).toList(), recorder.distribution(), elapsedSeconds, completed);
+    }
+
+    /**
+     * @return the problem of the response, null if it is valid
+     */
+    private static String validate(TempBoundaries tempBoundaries, Response<Parsed<PredictionApiClient.Prediction>> response) {
+        if (!response.isSuccessful()) {
+            return "unsuccessful response " + response.code();
+        }
+        if (Parsed.isMissingOrInvalid(response.body())) {
+            return "bad response payload";
+        }
+        PredictionApiClient.Prediction prediction = response.body().value();
+        if (!tempBoundaries.country().equalsIgnoreCase(prediction.country())) {
+            return "answered for `" + prediction.country() + "`";
+        }
+        if (prediction.temperatures() == null || prediction.temperatures().size() != 2) {
+            return "expected 2 temperatures";
+        }
+        for (PredictionApiClient.TempPoint tempPoint : prediction.temperatures()) {
+            if (tempPoint.temperature() < tempBoundaries.min() || tempPoint.temperature() > tempBoundaries.max()) {
+                return "temperature `" + tempPoint.temperature() + "` is not between `" + tempBoundaries.min() + "` and `" + tempBoundaries.max() + "`";
+            }
+        }
+        return null;
+    }
+
+    private record Sweep(int total, int valid, List<String> invalidSamples, LatencyRecorder.Distribution latencies, double elapsedSeconds, boolean completed) {
+
+        String summary() {
+            return String.format(Locale.US, "%.1f%% of the %d countries of the dataset got a valid prediction (%s, %s in %.2f sec.)",
+                valid * 100D / total, total, latencies, completed ? "completed" : "timed out", elapsedSeconds);
         }
     }
 }
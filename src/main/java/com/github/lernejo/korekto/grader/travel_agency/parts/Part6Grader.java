@@ -1,15 +1,16 @@
 package com.github.lernejo.korekto.grader.travel_agency.parts;
 
 import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.Parsed;
 import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
 import com.github.lernejo.korekto.grader.travel_agency.TravelAgencyApiClient;
 import com.github.lernejo.korekto.toolkit.GradePart;
 import com.github.lernejo.korekto.toolkit.PartGrader;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
-import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutor;
+import com.github.lernejo.korekto.toolkit.misc.HumanReadableDuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import retrofit2.Call;
 import retrofit2.Response;
 
 import java.io.IOException;
@@ -23,41 +24,23 @@ import java.util.stream.Collectors;
 public class Part6Grader implements PartGrader<LaunchingContext> {
 
     private static final Logger logger = LoggerFactory.getLogger(Part6Grader.class);
-
-    private static List<String> countries = List.of(
-        "Bahrain",
-        "Bangladesh",
-        "Barbados",
-        "Belarus",
-        "Belgium",
-        "Belize",
-        "Benin",
-        "Bhutan",
-        "Bolivia",
-        "Bosnia",
-        "Botswana",
-        "Brazil",
-        "Brunei",
-        "Bulgaria",
-        "Eritrea",
-        "Estonia",
-        "Eswatini",
-        "Ethiopia",
-        "Fiji",
-        "Finland",
-        "France",
-        "Gabon"
-    );
+    private static final long MEGABYTE = 1024L * 1024L;
 
     private final TravelAgencyApiClient.WeatherExpectation weatherExpectation;
+    private final Scenario scenario;
 
     public Part6Grader(TravelAgencyApiClient.WeatherExpectation weatherExpectation) {
+        this(weatherExpectation, Scenario.NOMINAL);
+    }
+
+    public Part6Grader(TravelAgencyApiClient.WeatherExpectation weatherExpectation, Scenario scenario) {
         this.weatherExpectation = weatherExpectation;
+        this.scenario = scenario;
     }
 
     @Override
     public String name() {
-        return "Part 6 - HTTP client and data coherence (" + weatherExpectation.name().toLowerCase(Locale.ROOT) + ")";
+        return "Part 6 - HTTP client and data coherence (" + weatherExpectation.name().toLowerCase(Locale.ROOT) + (scenario.label() != null ? ", " + scenario.label() : "") + ")";
     }
 
     @Override
@@ -73,18 +56,19 @@ public class Part6Grader implements PartGrader<LaunchingContext> {
         if (context.siteServerFailed()) {
             return result(List.of("Skipping due to previous errors"), 0.0D);
         }
-        TravelAgencyApiClient.Inscription inscription = generateInscription();
+        RandomSupplier random = context.randomSource(this);
+        List<String> countries = Dataset.forExercise(context.getExercise().getRoot()).countries();
+        TravelAgencyApiClient.Inscription inscription = generateInscription(random, countries);
 
-        int userCountryTemp = LaunchingContext.getRandomSource().nextInt(15) + 15;
+        int userCountryTemp = random.nextInt(15) + 15;
         logger.info("Using " + inscription);
-        Set<String> expectedMatchingCountries = buildMatchingCountries(inscription.userCountry());
+        Set<String> expectedMatchingCountries = buildMatchingCountries(random, countries, inscription.userCountry());
         logger.info("Matching countries " + expectedMatchingCountries);
         var predictionFunction = buildPredictionFunction(userCountryTemp, expectedMatchingCountries, inscription);
 
-        try (PredictionServer predictionServer = new PredictionServer(context.predictionServerPort, predictionFunction);
-             MavenExecutionHandle ignored = MavenExecutor.executeGoalAsync(context.getExercise(), context.getConfiguration().getWorkspace(),
-                 Part1Grader.sbPluginGav + ":run -pl :site -Dspring-boot.run.jvmArguments='-Dserver.port=" + context.siteServerPort + " -DtackEnabled=true  -DtackRedirectPort=" + context.predictionServerPort + "'")) {
-            Ports.waitForPortToBeListenedTo(context.siteServerPort, TimeUnit.SECONDS, context.serverStartTimeout);
+        try {
+            SiteServer siteServer = SiteServer.obtain(context, random);
+            PredictionServer predictionServer = siteServer.useScenario(predictionFunction, scenario.faultProfile().seededBy(random), scenario.historyLength());
 
             String inscriptionQuery = "POST `/api/inscription`";
             try {
@@ -93,60 +77,90 @@ public class Part6Grader implements PartGrader<LaunchingContext> {
                     return result(List.of("Unsuccessful response of " + inscriptionQuery + ": " + inscriptionResponse.code()), 0.0D);
                 }
             } catch (IOException e) {
+                context.markAsTransientFailure();
                 return result(List.of("Failed to call **site** " + inscriptionQuery + ": " + e.getMessage()), 0.0D);
             }
 
 
             String travelsQuery = "GET `/api/travels?userName=" + inscription.userName() + "`";
-            try (var exHolder = context.newExceptionHolder()) {
-                Response<List<TravelAgencyApiClient.Travel>> travelsResponse = context.travelAgencyApiClient.getTravels(inscription.userName()).execute();
+            OptionalLong peakResidentBytesBefore = scenario.memoryBudgetBytes() > 0 ? siteServer.peakResidentBytes() : OptionalLong.empty();
+            long travelsStart = System.currentTimeMillis();
+            try {
+                Call<Parsed<List<TravelAgencyApiClient.Travel>>> travelsCall = context.travelAgencyApiClient.getTravels(inscription.userName());
+                if (scenario.travelsTimeoutMillis() > 0) {
+                    travelsCall.timeout().timeout(scenario.travelsTimeoutMillis(), TimeUnit.MILLISECONDS);
+                }
+                Response<Parsed<List<TravelAgencyApiClient.Travel>>> travelsResponse = travelsCall.execute();
+                logger.info(travelsQuery + " answered in " + HumanReadableDuration.toString(System.currentTimeMillis() - travelsStart));
                 if (!travelsResponse.isSuccessful()) {
+                    if (scenario.advice() != null && travelsResponse.code() >= 500) {
+                        return result(List.of("Unsuccessful response of " + travelsQuery + ": " + travelsResponse.code()
+                            + ": " + scenario.advice()), 0.0D);
+                    }
                     return result(List.of("Unsuccessful response of " + travelsQuery + ": " + travelsResponse.code()), 0.0D);
-                } else if (exHolder.getLatestDeserializationProblem() != null) {
-                    return result(List.of("Bad response payload expected something like:\n```\n" + TravelAgencyApiClient.SAMPLE_RESPONSE_PAYLOAD + "\n```\nBut got:\n```\n" + exHolder.getLatestDeserializationProblem().rawBody() + "\n```"), 0.0D);
+                } else if (Parsed.isMissingOrInvalid(travelsResponse.body())) {
+                    return result(List.of("Bad response payload expected something like:\n```\n" + TravelAgencyApiClient.SAMPLE_RESPONSE_PAYLOAD + "\n```\nBut got:\n```\n" + Parsed.rawBodyOf(travelsResponse.body()) + "\n```"), 0.0D);
                 }
-                if (predictionServer.exchanges.isEmpty()) {
+                if (predictionServer.requestCount() == 0) {
                     return result(List.of("Expected calls to the prediction-engine API, but none was recorded"), 0.0D);
                 }
 
-                Set<String> actualMatchingCountries = travelsResponse.body().stream().map(t -> t.country().toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+                Set<String> actualMatchingCountries = travelsResponse.body().value().stream().map(t -> t.country().toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
                 if (!actualMatchingCountries.equals(expectedMatchingCountries)) {
                     return result(List.of(
                         "Expected the following countries to be returned:\n\t* "
                             + expectedMatchingCountries.stream().collect(Collectors.joining("\n\t* "))
                             + "\nBut found :\n\t* "
                             + actualMatchingCountries.stream().collect(Collectors.joining("\n\t* "))
+                            + (scenario.injectsFaults() ? "\n" + scenario.advice() : "")
                     ), 0.0D);
                 }
+                if (scenario.memoryBudgetBytes() > 0) {
+                    OptionalLong peakResidentBytesAfter = siteServer.peakResidentBytes();
+                    if (peakResidentBytesBefore.isEmpty() || peakResidentBytesAfter.isEmpty()) {
+                        logger.info("Memory budget not checked, the resident memory of the **site** process cannot be measured");
+                    } else {
+                        long growthBytes = peakResidentBytesAfter.getAsLong() - peakResidentBytesBefore.getAsLong();
+                        logger.info(travelsQuery + " raised the peak resident memory of **site** by " + growthBytes / MEGABYTE + " MB");
+                        if (growthBytes > scenario.memoryBudgetBytes()) {
+                            return result(List.of(travelsQuery + " raised the peak resident memory of **site** by " + growthBytes / MEGABYTE
+                                + " MB, more than the " + scenario.memoryBudgetBytes() / MEGABYTE + " MB allowed: " + scenario.advice()), 0.0D);
+                        }
+                    }
+                }
             } catch (IOException e) {
+                long travelsDuration = System.currentTimeMillis() - travelsStart;
+                if (scenario.travelsTimeoutMillis() > 0 && travelsDuration >= scenario.travelsTimeoutMillis()) {
+                    return result(List.of(travelsQuery + " took more than " + HumanReadableDuration.toString(scenario.travelsTimeoutMillis())
+                        + ": " + scenario.advice()), 0.0D);
+                }
+                context.markAsTransientFailure();
                 return result(List.of("Failed to call **site** " + travelsQuery + ": " + e.getMessage()), 0.0D);
             }
 
             return result(List.of(), maxGrade());
         } catch (CancellationException e) {
+            context.markAsTransientFailure();
             return result(List.of("Server failed to start within " + context.serverStartTimeout + " sec."), 0.0D);
-        } finally {
-            Ports.waitForPortToBeFreed(context.siteServerPort, TimeUnit.SECONDS, 5L);
+        } catch (ServerExitedException e) {
+            return result(List.of(e.getMessage()), 0.0D);
         }
     }
 
     private static Function<String, Optional<PredictionApiClient.Prediction>> buildPredictionFunction(int userCountryTemp, Set<String> matchingCountries, TravelAgencyApiClient.Inscription inscription) {
-        return country -> {
-            String lCountry = country.toLowerCase(Locale.ROOT);
-            final PredictionApiClient.Prediction prediction;
-            if (inscription.userCountry().equals(lCountry) || !matchingCountries.contains(lCountry)) {
-                prediction = buildPrediction(country, userCountryTemp);
-            } else {
-                int diff = inscription.weatherExpectation() == TravelAgencyApiClient.WeatherExpectation.WARMER ? inscription.minimumTemperatureDistance() + 2 : (-inscription.minimumTemperatureDistance() - 2);
-                double matchingTemp = userCountryTemp + diff;
-                prediction = buildPrediction(country, matchingTemp);
+        int diff = inscription.weatherExpectation() == TravelAgencyApiClient.WeatherExpectation.WARMER ? inscription.minimumTemperatureDistance() + 2 : (-inscription.minimumTemperatureDistance() - 2);
+        double matchingTemp = userCountryTemp + diff;
+        // Case-folded once, so that each call is a single lookup
+        Map<String, Double> temperatureByCountry = new HashMap<>();
+        for (String matchingCountry : matchingCountries) {
+            if (!inscription.userCountry().equals(matchingCountry)) {
+                temperatureByCountry.put(matchingCountry, matchingTemp);
             }
-            //logger.info("" + prediction);
-            return Optional.of(prediction);
-        };
+        }
+        return country -> Optional.of(buildPrediction(country, temperatureByCountry.getOrDefault(country.toLowerCase(Locale.ROOT), (double) userCountryTemp)));
     }
 
-    private static PredictionApiClient.Prediction buildPrediction(String country, double temp) {
+    static PredictionApiClient.Prediction buildPrediction(String country, double temp) {
         String date1 = LocalDate.now().toString();
         double temp1 = temp + 1;
         String date2 = LocalDate.now().minusDays(1).toString();
@@ -157,10 +171,10 @@ public class Part6Grader implements PartGrader<LaunchingContext> {
         ));
     }
 
-    private TravelAgencyApiClient.Inscription generateInscription() {
-        String userName = LaunchingContext.getRandomSource().nextUuid().toString().toLowerCase(Locale.ROOT);
-        String userCountry = countries.get(LaunchingContext.getRandomSource().nextInt(countries.size() - 1));
-        int minimumTemperatureDistance = LaunchingContext.getRandomSource().nextInt(10) + 6;
+    private TravelAgencyApiClient.Inscription generateInscription(RandomSupplier random, List<String> countries) {
+        String userName = random.nextUuid().toString().toLowerCase(Locale.ROOT);
+        String userCountry = countries.get(random.nextInt(Math.max(1, countries.size() - 1)));
+        int minimumTemperatureDistance = random.nextInt(10) + 6;
 
         return new TravelAgencyApiClient.Inscription(
             userName + "@lernejo.fr",
@@ -170,15 +184,84 @@ public class Part6Grader implements PartGrader<LaunchingContext> {
             minimumTemperatureDistance);
     }
 
-    private Set<String> buildMatchingCountries(String userCountry) {
-        int nbrOfMatchingCountries = LaunchingContext.getRandomSource().nextInt(4) + 2;
+    /**
+     * Countries are drawn among all but the last one, so that there are at least `countries.size() - 2` candidates besides the user country.
+     */
+    private Set<String> buildMatchingCountries(RandomSupplier random, List<String> countries, String userCountry) {
+        int candidates = Math.max(1, countries.size() - 1);
+        int nbrOfMatchingCountries = Math.min(random.nextInt(4) + 2, countries.size() - 2);
         Set<String> matchingCountries = new HashSet<>();
-        do {
-            String country = countries.get(LaunchingContext.getRandomSource().nextInt(countries.size() - 1)).toLowerCase(Locale.ROOT);
+        while (matchingCountries.size() < nbrOfMatchingCountries) {
+            String country = countries.get(random.nextInt(candidates)).toLowerCase(Locale.ROOT);
             if (!userCountry.equals(country) && !matchingCountries.contains(country)) {
                 matchingCountries.add(country);
             }
-        } while (matchingCountries.size() < nbrOfMatchingCountries);
+        }
         return matchingCountries;
     }
+
+    /**
+     * Conditions of the prediction-engine stub the **site** server is graded against.
+     *
+     * @param label                appended to the part name, null for the nominal scenario
+     * @param faultProfile         delays and faults of the stub
+     * @param historyLength        number of temperatures in each prediction, 0 for the usual two
+     * @param travelsTimeoutMillis time allowed to `GET /api/travels`, 0 to keep the client defaults
+     * @param memoryBudgetBytes    growth of the **site** peak resident memory allowed during `GET /api/travels`, 0 to leave it unchecked
+     * @param advice               given to the student when `GET /api/travels` takes too long, uses too much memory, fails, or misses countries because of injected faults
+     */
+    public record Scenario(String label, FaultProfile faultProfile, int historyLength, long travelsTimeoutMillis, long memoryBudgetBytes, String advice) {
+
+        public static final Scenario NOMINAL = new Scenario(null, FaultProfile.NONE, 0, 0L, 0L, null);
+
+        boolean injectsFaults() {
+            return faultProfile.serverErrorRate() > 0 || faultProfile.connectionDropRate() > 0;
+        }
+
+        /**
+         * Each prediction takes `-DSLOW_UPSTREAM_DELAY_MS` (300 ms by default), so that a site calling the prediction-engine
+         * sequentially for each country exceeds `-DSLOW_UPSTREAM_TIMEOUT_MS` (3 sec. by default), whereas a concurrent one does not.
+         */
+        public static Scenario slowUpstream() {
+            long delayMillis = Long.parseLong(System.getProperty("SLOW_UPSTREAM_DELAY_MS", "300"));
+            long timeoutMillis = Long.parseLong(System.getProperty("SLOW_UPSTREAM_TIMEOUT_MS", "3000"));
+            return new Scenario("slow upstream", FaultProfile.delay(delayMillis, delayMillis / 10), 0, timeoutMillis, 0L,
+                "the prediction-engine answers in " + delayMillis + " ms, calls to the prediction-engine should be made concurrently");
+        }
+
+        /**
+         * `-DFLAKY_UPSTREAM_ERROR_RATE` of the predictions (30% by default) are first answered with a `503` status,
+         * so that a site which does not retry failed calls misses countries.
+         */
+        public static Scenario flakyUpstream() {
+            double errorRate = Double.parseDouble(System.getProperty("FLAKY_UPSTREAM_ERROR_RATE", "0.3"));
+            return new Scenario("flaky upstream", FaultProfile.serverErrors(errorRate), 0, 0L, 0L,
+                "the prediction-engine answers some requests with a 503 status, such failed calls should be retried");
+        }
+
+        /**
+         * `-DDROPPING_UPSTREAM_RATE` of the predictions (30% by default) first get their connection closed without any response,
+         * so that a site which does not retry calls failing with an I/O error misses countries.
+         */
+        public static Scenario droppingUpstream() {
+            double dropRate = Double.parseDouble(System.getProperty("DROPPING_UPSTREAM_RATE", "0.3"));
+            return new Scenario("dropping upstream", FaultProfile.connectionDrops(dropRate), 0, 0L, 0L,
+                "the prediction-engine closes some connections without answering, calls failing this way should be retried");
+        }
+
+        /**
+         * Each prediction holds `-DLARGE_HISTORY_POINTS` temperatures (100 000 by default), which the site must process
+         * within `-DLARGE_HISTORY_TIMEOUT_MS` (10 sec. by default),
+         * raising its peak resident memory by at most `-DLARGE_HISTORY_MEMORY_BUDGET_MB` (128 MB by default, 0 to leave it unchecked).
+         * The memory is only measured for a **site** started from its jar on Linux.
+         * The heap of the site can also be capped with `-DSERVER_MAX_HEAP`, so that buffering whole responses makes it fail.
+         */
+        public static Scenario largeHistory() {
+            int historyLength = Integer.parseInt(System.getProperty("LARGE_HISTORY_POINTS", "100000"));
+            long timeoutMillis = Long.parseLong(System.getProperty("LARGE_HISTORY_TIMEOUT_MS", "10000"));
+            long memoryBudgetBytes = Long.parseLong(System.getProperty("LARGE_HISTORY_MEMORY_BUDGET_MB", "128")) * MEGABYTE;
+            return new Scenario("large history", FaultProfile.NONE, historyLength, timeoutMillis, memoryBudgetBytes,
+                "predictions hold " + historyLength + " temperatures, they should be processed as they are read, without keeping whole responses in memory nor doing extra work for each temperature");
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits for a server to listen to its port, probing it with an exponential backoff between two connection attempts.
+ */
+class PortProbe {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 20L;
+    private static final long MAX_BACKOFF_MILLIS = 500L;
+    private static final int CONNECT_TIMEOUT_MILLIS = 200;
+
+    /**
+     * @param readySignal completed when the server is known to be ready, or exceptionally when it is known to have failed,
+     *                    cutting the wait short in both cases
+     */
+    static void awaitListening(int port, long timeoutSeconds, CompletableFuture<?> readySignal) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        while (!isListening(port)) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                throw new CancellationException("Port " + port + " not listened to within " + timeoutSeconds + " sec.");
+            }
+            try {
+                readySignal.get(Math.min(backoff, remaining), TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for port " + port);
+            }
+        }
+    }
+
+    static boolean isListening(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port), CONNECT_TIMEOUT_MILLIS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
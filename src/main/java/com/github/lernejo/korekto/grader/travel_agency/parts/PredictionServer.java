@@ -2,8 +2,11 @@ package com.github.lernejo.korekto.grader.travel_agency.parts;
 
 import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
 import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
-import com.github.lernejo.korekto.toolkit.misc.Ports;
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
+import com.github.lernejo.korekto.grader.travel_agency.events.PredictionRequestEvent;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.github.lernejo.korekto.toolkit.misc.SubjectForToolkitInclusion;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -14,33 +17,71 @@ import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Stub of the prediction-engine API the **site** server is redirected to.
+ * <p>
+ * Responses are serialized once per country and scenario, then served from a cache.
+ * They are gzipped, once and only when a client first asks for it, for clients sending `Accept-Encoding: gzip`, unless `-DPREDICTION_SERVER_GZIP=false`,
+ * and sent chunked above `-DPREDICTION_SERVER_CHUNKED_THRESHOLD_KB` (64 by default).
+ * Scenarios with a history length instead stream long histories of temperatures, which are neither built in memory nor cached.
+ * Scenarios can also delay responses, answer with a `503` status or close connections without response, see {@link FaultProfile}.
+ * <p>
+ * Exchanges are recorded according to `-DPREDICTION_SERVER_LOGGING`:
+ * <ul>
+ *     <li>`full` (default) records every exchange</li>
+ *     <li>`sampled` records one exchange out of `-DPREDICTION_SERVER_LOG_SAMPLE` (100 by default)</li>
+ *     <li>`counters` only counts requests</li>
+ * </ul>
+ */
 class PredictionServer implements AutoCloseable {
 
-    private final int port;
-    private final Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction;
+    private static final List<String> JSON_CONTENT_TYPE = List.of("application/json");
+    private static final List<String> GZIP_CONTENT_ENCODING = List.of("gzip");
+    private static final List<String> ACCEPT_ENCODING_VARY = List.of("Accept-Encoding");
+    private static final int HISTORY_DATE_WINDOW_DAYS = 365;
+
+    private final RequestLogging requestLogging = RequestLogging.valueOf(System.getProperty("PREDICTION_SERVER_LOGGING", "full").toUpperCase(Locale.ROOT));
+    private final int logSampleRate = Integer.parseInt(System.getProperty("PREDICTION_SERVER_LOG_SAMPLE", "100"));
+    private final boolean gzipEnabled = Boolean.parseBoolean(System.getProperty("PREDICTION_SERVER_GZIP", "true"));
+    private final int chunkedThreshold = Integer.parseInt(System.getProperty("PREDICTION_SERVER_CHUNKED_THRESHOLD_KB", "64")) * 1024;
+    private volatile ScenarioState scenario;
     private final HttpServer server;
     private final ExecutorService executorService;
-    public final List<HttpEx> exchanges = new ArrayList<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong sampledExchanges = new AtomicLong();
+    public final Queue<HttpEx> exchanges = new ConcurrentLinkedQueue<>();
+
+    PredictionServer(int port, RandomSupplier random) {
+        this(port, defaultPrediction(Dataset.BUILT_IN, random));
+    }
 
-    PredictionServer(int port) {
-        this(port, PredictionServer::defaultPrediction);
+    /**
+     * @return random predictions within the boundaries of the given dataset, none for unknown countries
+     */
+    static Function<String, Optional<PredictionApiClient.Prediction>> defaultPrediction(Dataset dataset, RandomSupplier random) {
+        return country -> defaultPrediction(dataset, random, country);
     }
 
-    private static Optional<PredictionApiClient.Prediction> defaultPrediction(String country) {
-        Dataset.TempBoundaries tempBoundaries = Dataset.getByCountry(country);
+    private static Optional<PredictionApiClient.Prediction> defaultPrediction(Dataset dataset, RandomSupplier random, String country) {
+        Dataset.TempBoundaries tempBoundaries = dataset.getByCountry(country);
         if(tempBoundaries == null) {
             return Optional.empty();
         }
         String date1 = LocalDate.now().toString();
-        double temp1 = generateTemp(tempBoundaries);
+        double temp1 = generateTemp(random, tempBoundaries);
         String date2 = LocalDate.now().minusDays(1).toString();
-        double temp2 = generateTemp(tempBoundaries);
+        double temp2 = generateTemp(random, tempBoundaries);
 
         return Optional.of(new PredictionApiClient.Prediction(country, List.of(
             new PredictionApiClient.TempPoint(date1, temp1),
@@ -48,57 +89,248 @@ class PredictionServer implements AutoCloseable {
         )));
     }
 
-    private static double generateTemp(Dataset.TempBoundaries tempBoundaries) {
-        return LaunchingContext.getRandomSource().nextInt((int) ((Math.round(tempBoundaries.max()) - Math.round(tempBoundaries.min())) * 100)) / 100 + tempBoundaries.min();
+    private static double generateTemp(RandomSupplier random, Dataset.TempBoundaries tempBoundaries) {
+        return random.nextInt((int) ((Math.round(tempBoundaries.max()) - Math.round(tempBoundaries.min())) * 100)) / 100 + tempBoundaries.min();
+    }
+
+    /**
+     * @return the given number of consecutive dates, from today backwards
+     */
+    private static String[] historyDates(int count) {
+        LocalDate today = LocalDate.now();
+        String[] dates = new String[Math.max(1, count)];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = today.minusDays(i).toString();
+        }
+        return dates;
     }
 
     PredictionServer(int port, Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction) {
-        this.port = port;
-        this.predictionFunction = predictionFunction;
+        this.scenario = new ScenarioState(predictionFunction, FaultProfile.NONE, 0);
         try {
             server = HttpServer.create(new InetSocketAddress(port), 0);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        executorService = Executors.newFixedThreadPool(1);
+        executorService = newExecutorService();
         server.setExecutor(executorService);
-        server.createContext("/api/temperature", new CallHandler(exchanges));
+        server.createContext("/api/temperature", new CallHandler());
         server.start();
     }
 
+    /**
+     * Serves requests on a fixed pool of `-DPREDICTION_SERVER_THREADS` daemon threads (32 by default), further requests waiting in its queue.
+     * The pool is bounded, so that load scenarios and injected delays cannot start a thread per pending request.
+     */
+    private static ExecutorService newExecutorService() {
+        int threads = Integer.parseInt(System.getProperty("PREDICTION_SERVER_THREADS", "32"));
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "prediction-stub-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param historyLength number of daily temperatures to answer with, the ones of the predictions being repeated so that their average is kept,
+     *                      0 to answer with the predictions as they are
+     */
+    void useScenario(Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction, FaultProfile faultProfile, int historyLength) {
+        this.scenario = new ScenarioState(predictionFunction, faultProfile, historyLength);
+        requestCount.set(0L);
+        exchanges.clear();
+    }
+
+    /**
+     * @return the number of requests received since the current scenario is in use, whatever the logging mode
+     */
+    long requestCount() {
+        return requestCount.get();
+    }
+
     @Override
     public void close() {
+        // Closes the listening socket before returning
         server.stop(0);
         executorService.shutdownNow();
-        Ports.waitForPortToBeFreed(port, TimeUnit.SECONDS, 5L);
+        try {
+            executorService.awaitTermination(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private class CallHandler implements HttpHandler {
-        private final List<HttpEx> logs;
+    enum RequestLogging {
+        FULL, SAMPLED, COUNTERS
+    }
+
+    /**
+     * Behavior of the stub along with the responses it already serialized, swapped as a whole when the scenario changes.
+     */
+    private record ScenarioState(Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction,
+                                 FaultProfile faultProfile,
+                                 int historyLength,
+                                 Map<String, CachedResponse> responses,
+                                 Map<String, AtomicInteger> attemptsByCountry) {
+
+        ScenarioState(Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction, FaultProfile faultProfile, int historyLength) {
+            this(predictionFunction, faultProfile, historyLength, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+
+        /**
+         * @return the number of requests for the given country received before this one
+         */
+        int nextAttempt(String country) {
+            return attemptsByCountry.computeIfAbsent(country.toLowerCase(Locale.ROOT), c -> new AtomicInteger()).getAndIncrement();
+        }
+
+        CachedResponse responseFor(String country) throws IOException {
+            CachedResponse response = responses.get(country);
+            if (response == null) {
+                Optional<PredictionApiClient.Prediction> prediction = predictionFunction.apply(country);
+                response = prediction.isEmpty()
+                    ? CachedResponse.NOT_FOUND
+                    : CachedResponse.ok(LaunchingContext.OBJECT_MAPPER.writeValueAsBytes(prediction.get()));
+                CachedResponse concurrentResponse = responses.putIfAbsent(country, response);
+                if (concurrentResponse != null) {
+                    response = concurrentResponse;
+                }
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Serialized response, only gzipped the first time a client accepting it asks for it.
+     */
+    private static final class CachedResponse {
+        static final CachedResponse NOT_FOUND = new CachedResponse(404, null);
+
+        private final int code;
+        private final byte[] body;
+        private volatile byte[] gzippedBody;
+
+        private CachedResponse(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
 
-        public CallHandler(List<HttpEx> logs) {
-            this.logs = logs;
+        static CachedResponse ok(byte[] body) {
+            return new CachedResponse(200, body);
         }
 
+        int code() {
+            return code;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        /**
+         * Concurrent first calls may compress the body more than once, the result being the same.
+         */
+        byte[] gzippedBody() throws IOException {
+            byte[] gzipped = gzippedBody;
+            if (gzipped == null) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 2 + 32);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+                    gzip.write(body);
+                }
+                gzipped = output.toByteArray();
+                gzippedBody = gzipped;
+            }
+            return gzipped;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private class CallHandler implements HttpHandler {
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            PredictionRequestEvent event = new PredictionRequestEvent();
+            CountingOutputStream responseBody = null;
+            if (event.isEnabled()) {
+                responseBody = new CountingOutputStream(exchange.getResponseBody());
+                exchange.setStreams(null, responseBody);
+                event.begin();
+            }
+            // Fully consuming the request and closing the exchange lets the connection be kept alive
+            try {
+                doHandle(exchange);
+            } finally {
+                exchange.close();
+                if (event.shouldCommit()) {
+                    event.port = server.getAddress().getPort();
+                    event.country = parseQuery(exchange.getRequestURI()).get("country");
+                    event.status = Math.max(0, exchange.getResponseCode());
+                    event.responseBytes = responseBody.count;
+                    event.commit();
+                }
+            }
+        }
+
+        private void doHandle(HttpExchange exchange) throws IOException {
+            ScenarioState scenario = PredictionServer.this.scenario;
+            requestCount.incrementAndGet();
             if ("GET".equals(exchange.getRequestMethod())) {
                 Map<String, String> query = parseQuery(exchange.getRequestURI());
                 if (query.containsKey("country")) {
-                    Optional<PredictionApiClient.Prediction> body = predictionFunction.apply(query.get("country"));
-                    if(body.isEmpty()) {
+                    if (!applyFaults(exchange, scenario, query.get("country"))) {
+                        return;
+                    }
+                    if (scenario.historyLength() > 0) {
+                        Optional<PredictionApiClient.Prediction> prediction = scenario.predictionFunction().apply(query.get("country"));
+                        if (prediction.isEmpty()) {
+                            notFound(exchange, readInputStream(exchange.getRequestBody()));
+                        } else {
+                            streamHistory(exchange, prediction.get(), scenario.historyLength());
+                        }
+                        return;
+                    }
+                    CachedResponse response = scenario.responseFor(query.get("country"));
+                    if (response.body() == null) {
                         notFound(exchange, readInputStream(exchange.getRequestBody()));
                     } else {
-                        String rawBody = LaunchingContext.OBJECT_MAPPER.writeValueAsString(body.get());
-                        int code = 200;
-                        exchange.getResponseHeaders().add("Content-Type", "application/json");
-                        exchange.sendResponseHeaders(code, rawBody.length());
-                        logs.add(new HttpEx(
-                            new HttpEx.Request(exchange.getRequestMethod().toUpperCase(), exchange.getRequestURI().toString(), toMap(exchange.getRequestHeaders()), null),
-                            new HttpEx.Response(code, toMap(exchange.getResponseHeaders()), rawBody)));
-                        OutputStream os = exchange.getResponseBody();
-                        os.write(rawBody.getBytes(StandardCharsets.UTF_8));
-                        os.close();
+                        boolean gzip = gzipEnabled && acceptsGzip(exchange);
+                        byte[] payload = gzip ? response.gzippedBody() : response.body();
+                        Headers responseHeaders = exchange.getResponseHeaders();
+                        responseHeaders.put("Content-Type", JSON_CONTENT_TYPE);
+                        responseHeaders.put("Vary", ACCEPT_ENCODING_VARY);
+                        if (gzip) {
+                            responseHeaders.put("Content-Encoding", GZIP_CONTENT_ENCODING);
+                        }
+                        // A length of 0 makes the exchange use chunked transfer encoding
+                        exchange.sendResponseHeaders(response.code(), payload.length > chunkedThreshold ? 0 : payload.length);
+                        if (shouldRecord()) {
+                            exchanges.add(new HttpEx(
+                                new HttpEx.Request(exchange.getRequestMethod().toUpperCase(), exchange.getRequestURI().toString(), toMap(exchange.getRequestHeaders()), null),
+                                new HttpEx.Response(response.code(), toMap(exchange.getResponseHeaders()), new String(response.body(), StandardCharsets.UTF_8))));
+                        }
+                        try (OutputStream os = exchange.getResponseBody()) {
+                            os.write(payload);
+                        }
                     }
                 } else {
                     badRequest(exchange, readInputStream(exchange.getRequestBody()));
@@ -108,6 +340,40 @@ class PredictionServer implements AutoCloseable {
             }
         }
 
+        /**
+         * @return false if a fault was injected in place of the response
+         */
+        private boolean applyFaults(HttpExchange exchange, ScenarioState scenario, String country) throws IOException {
+            FaultProfile profile = scenario.faultProfile();
+            if (profile == FaultProfile.NONE) {
+                return true;
+            }
+            int attempt = scenario.nextAttempt(country);
+            long delayMillis = profile.drawDelayMillis(country, attempt);
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            switch (profile.drawFault(country, attempt)) {
+                case CONNECTION_DROP:
+                    // Closing the exchange before sending headers closes the connection
+                    if (shouldRecord()) {
+                        exchanges.add(new HttpEx(
+                            new HttpEx.Request(exchange.getRequestMethod().toUpperCase(), exchange.getRequestURI().toString(), toMap(exchange.getRequestHeaders()), null),
+                            null));
+                    }
+                    return false;
+                case SERVER_ERROR:
+                    emptyResponseWithCode(exchange, null, 503);
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
         @SubjectForToolkitInclusion
         private static Map<String, String> parseQuery(URI requestURI) {
             if (requestURI.getQuery() == null) {
@@ -120,6 +386,55 @@ class PredictionServer implements AutoCloseable {
             }
         }
 
+        /**
+         * Writes the history point by point in a chunked response, cycling through the temperatures of the given prediction,
+         * and through the dates of the last year, so that dates stay valid whatever the length of the history.
+         */
+        private void streamHistory(HttpExchange exchange, PredictionApiClient.Prediction prediction, int historyLength) throws IOException {
+            List<PredictionApiClient.TempPoint> basePoints = prediction.temperatures();
+            // Whole cycles keep the average temperature of the prediction
+            int pointCount = (historyLength + basePoints.size() - 1) / basePoints.size() * basePoints.size();
+            boolean gzip = gzipEnabled && acceptsGzip(exchange);
+            Headers responseHeaders = exchange.getResponseHeaders();
+            responseHeaders.put("Content-Type", JSON_CONTENT_TYPE);
+            responseHeaders.put("Vary", ACCEPT_ENCODING_VARY);
+            if (gzip) {
+                responseHeaders.put("Content-Encoding", GZIP_CONTENT_ENCODING);
+            }
+            exchange.sendResponseHeaders(200, 0);
+            if (shouldRecord()) {
+                exchanges.add(new HttpEx(
+                    new HttpEx.Request(exchange.getRequestMethod().toUpperCase(), exchange.getRequestURI().toString(), toMap(exchange.getRequestHeaders()), null),
+                    new HttpEx.Response(200, toMap(exchange.getResponseHeaders()), "<" + pointCount + " temperatures of " + prediction.country() + ">")));
+            }
+            OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody(), 8192) : new BufferedOutputStream(exchange.getResponseBody(), 8192);
+            try (JsonGenerator generator = LaunchingContext.OBJECT_MAPPER.getFactory().createGenerator(body)) {
+                String[] dates = historyDates(Math.min(pointCount, HISTORY_DATE_WINDOW_DAYS));
+                generator.writeStartObject();
+                generator.writeStringField("country", prediction.country());
+                generator.writeArrayFieldStart("temperatures");
+                for (int i = 0; i < pointCount; i++) {
+                    generator.writeStartObject();
+                    generator.writeStringField("date", dates[i % dates.length]);
+                    generator.writeNumberField("temperature", basePoints.get(i % basePoints.size()).temperature());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        }
+
+        private static boolean acceptsGzip(HttpExchange exchange) {
+            List<String> acceptEncodings = exchange.getRequestHeaders().get("Accept-Encoding");
+            if (acceptEncodings == null) {
+                return false;
+            }
+            return acceptEncodings.stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(coding -> coding.trim().toLowerCase(Locale.ROOT))
+                .anyMatch(coding -> coding.equals("gzip") || (coding.startsWith("gzip;") && !coding.replace(" ", "").matches("gzip;q=0(\\.0*)?")));
+        }
+
         @SubjectForToolkitInclusion
         private void notFound(HttpExchange exchange, String originalBody) throws IOException {
             emptyResponseWithCode(exchange, originalBody, 404);
@@ -131,13 +446,24 @@ class PredictionServer implements AutoCloseable {
         }
 
         private void emptyResponseWithCode(HttpExchange exchange, String originalBody, int i) throws IOException {
-            logs.add(new HttpEx(
-                new HttpEx.Request(exchange.getRequestMethod().toUpperCase(), exchange.getRequestURI().toString(), toMap(exchange.getRequestHeaders()), originalBody),
-                null));
-            exchange.sendResponseHeaders(i, 0);
+            if (shouldRecord()) {
+                exchanges.add(new HttpEx(
+                    new HttpEx.Request(exchange.getRequestMethod().toUpperCase(), exchange.getRequestURI().toString(), toMap(exchange.getRequestHeaders()), originalBody),
+                    null));
+            }
+            // A length of -1 tells that there is no body at all
+            exchange.sendResponseHeaders(i, -1);
             exchange.getResponseBody().close();
         }
 
+        private boolean shouldRecord() {
+            return switch (requestLogging) {
+                case FULL -> true;
+                case SAMPLED -> sampledExchanges.getAndIncrement() % logSampleRate == 0;
+                case COUNTERS -> false;
+            };
+        }
+
         @SubjectForToolkitInclusion
         private Map<String, String> toMap(Map<String, List<String>> headers) {
             return headers.entrySet().stream().collect(Collectors.toMap(e -> e.getKey().toLowerCase(), e -> toRawHeaderValue(e.getValue())));
@@ -0,0 +1,99 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Server run as a child process of the grader.
+ * <p>
+ * Its output is copied to a log file and watched for the Spring Boot startup line, and its exit is reported right away,
+ * so that a crashed server does not cost the whole start timeout.
+ * Its peak resident memory is read from `/proc`, so only on Linux.
+ */
+class ProcessServerHandle implements ServerHandle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessServerHandle.class);
+    private static final Pattern STARTED_PATTERN = Pattern.compile("Started \\S+ in [\\d.,]+ seconds");
+
+    private final int port;
+    private final Process process;
+    private final CompletableFuture<Void> readySignal = new CompletableFuture<>();
+
+    ProcessServerHandle(int port, Process process, Path logFile) {
+        this.port = port;
+        this.process = process;
+        process.onExit().thenAccept(p -> readySignal.completeExceptionally(new ServerExitedException(p.exitValue())));
+        Thread outputWatcher = new Thread(() -> watchOutput(logFile), logFile.getFileName() + "-watcher");
+        outputWatcher.setDaemon(true);
+        outputWatcher.start();
+    }
+
+    private void watchOutput(Path logFile) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(line);
+                writer.write('\n');
+                if (!readySignal.isDone() && STARTED_PATTERN.matcher(line).find()) {
+                    writer.flush();
+                    readySignal.complete(null);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Stopped watching server output: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void awaitReady(long timeoutSeconds) {
+        PortProbe.awaitListening(port, timeoutSeconds, readySignal);
+    }
+
+    @Override
+    public OptionalLong peakResidentBytes() {
+        try {
+            List<String> status = Files.readAllLines(Path.of("/proc", String.valueOf(process.pid()), "status"), StandardCharsets.UTF_8);
+            for (String line : status) {
+                // Such as `VmHWM:    123456 kB`
+                if (line.startsWith("VmHWM:")) {
+                    String kiloBytes = line.substring("VmHWM:".length()).replace("kB", "").trim();
+                    return OptionalLong.of(Long.parseLong(kiloBytes) * 1024L);
+                }
+            }
+            return OptionalLong.empty();
+        } catch (IOException | NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    @Override
+    public void close() {
+        process.descendants().forEach(ProcessHandle::destroy);
+        process.destroy();
+        try {
+            process.onExit().get(5L, TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+    }
+}
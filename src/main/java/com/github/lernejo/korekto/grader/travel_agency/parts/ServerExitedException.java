@@ -0,0 +1,11 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+class ServerExitedException extends RuntimeException {
+
+    final int exitCode;
+
+    ServerExitedException(int exitCode) {
+        super("Server exited with code " + exitCode + " before being ready");
+        this.exitCode = exitCode;
+    }
+}
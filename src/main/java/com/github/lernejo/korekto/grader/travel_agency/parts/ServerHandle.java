@@ -0,0 +1,30 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import java.util.OptionalLong;
+
+/**
+ * Running server of the exercise, stopped when closed.
+ */
+interface ServerHandle extends AutoCloseable {
+
+    /**
+     * Blocks until the server is ready to serve requests.
+     *
+     * @throws java.util.concurrent.CancellationException if the server is not ready within the given timeout
+     * @throws ServerExitedException                      if the server process exits before being ready
+     */
+    void awaitReady(long timeoutSeconds);
+
+    /**
+     * @return the highest resident memory of the server process since it started, empty when it cannot be measured
+     */
+    default OptionalLong peakResidentBytes() {
+        return OptionalLong.empty();
+    }
+
+    /**
+     * Stops the server and waits for it to release its port.
+     */
+    @Override
+    void close();
+}
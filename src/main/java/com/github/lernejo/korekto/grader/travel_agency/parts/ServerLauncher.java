@@ -0,0 +1,182 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.GradingMetrics;
+import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.events.ServerReadyEvent;
+import com.github.lernejo.korekto.grader.travel_agency.events.ServerSpawnEvent;
+import com.github.lernejo.korekto.toolkit.misc.Ports;
+import com.github.lernejo.korekto.toolkit.thirdparty.maven.MavenExecutionHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Starts a Spring Boot module of the exercise.
+ * <p>
+ * The repackaged jar built by {@link Part1Grader} is launched with a plain `java -jar`, saving the Maven bootstrap.
+ * `spring-boot:run` is only used when no such jar is found, or when `-DSERVER_LAUNCHER=maven` is set.
+ */
+class ServerLauncher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerLauncher.class);
+
+    /**
+     * The stop of the returned server is attributed to the part launching it, whichever thread closes it.
+     */
+    static ServerHandle launch(LaunchingContext context, String module, int port, Map<String, String> systemProperties) {
+        ServerSpawnEvent event = new ServerSpawnEvent();
+        event.begin();
+        ServerHandle handle = GradingMetrics.INSTANCE.time(GradingMetrics.Phase.SERVER_BOOT, () -> launchServer(context, module, port, systemProperties));
+        if (event.shouldCommit()) {
+            event.module = module;
+            event.port = port;
+            event.launcher = handle instanceof ProcessServerHandle ? "jar" : "maven";
+            event.commit();
+        }
+        return new TimedServerHandle(handle, GradingMetrics.INSTANCE.currentPart());
+    }
+
+    /**
+     * Blocks until the server is ready, as {@link ServerHandle#awaitReady(long)}, recording the wait.
+     */
+    static void awaitReady(LaunchingContext context, String module, int port, ServerHandle handle) {
+        ServerReadyEvent event = new ServerReadyEvent();
+        event.begin();
+        boolean ready = false;
+        try {
+            GradingMetrics.INSTANCE.timeRun(GradingMetrics.Phase.READINESS_WAIT, () -> handle.awaitReady(context.serverStartTimeout));
+            ready = true;
+        } finally {
+            if (event.shouldCommit()) {
+                event.module = module;
+                event.port = port;
+                event.ready = ready;
+                event.commit();
+            }
+        }
+    }
+
+    private static ServerHandle launchServer(LaunchingContext context, String module, int port, Map<String, String> systemProperties) {
+        Map<String, String> allSystemProperties = new LinkedHashMap<>();
+        allSystemProperties.put("server.port", String.valueOf(port));
+        allSystemProperties.putAll(systemProperties);
+        Path modulePath = context.getExercise().getRoot().resolve(module);
+        Optional<Path> jar = context.launchServersFromJar ? findRepackagedJar(modulePath.resolve("target")) : Optional.empty();
+        if (jar.isPresent()) {
+            return launchJar(context, modulePath, jar.get(), port, allSystemProperties);
+        } else {
+            return launchWithMaven(context, module, port, allSystemProperties);
+        }
+    }
+
+    private static ServerHandle launchWithMaven(LaunchingContext context, String module, int port, Map<String, String> systemProperties) {
+        String jvmArguments = Stream.concat(
+                maxHeapOption(context).stream(),
+                systemProperties.entrySet().stream().map(e -> "-D" + e.getKey() + "=" + e.getValue()))
+            .collect(Collectors.joining(" "));
+        MavenExecutionHandle handle = MavenRunner.executeGoalAsync(context,
+            Part1Grader.sbPluginGav + ":run -pl :" + module + " -Dspring-boot.run.jvmArguments='" + jvmArguments + "'");
+        return new MavenServerHandle(port, handle);
+    }
+
+    private static ServerHandle launchJar(LaunchingContext context, Path modulePath, Path jar, int port, Map<String, String> systemProperties) {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        maxHeapOption(context).ifPresent(command::add);
+        systemProperties.forEach((key, value) -> command.add("-D" + key + "=" + value));
+        command.add("-jar");
+        command.add(jar.toString());
+        Path logFile = jar.resolveSibling(modulePath.getFileName() + "-server.log");
+        logger.debug("Starting " + jar + ", output in " + logFile);
+        try {
+            Process process = new ProcessBuilder(command)
+                .directory(modulePath.toFile())
+                .redirectErrorStream(true)
+                .start();
+            return new ProcessServerHandle(port, process, logFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Optional<String> maxHeapOption(LaunchingContext context) {
+        return Optional.ofNullable(context.serverMaxHeap).map(maxHeap -> "-Xmx" + maxHeap);
+    }
+
+    static Optional<Path> findRepackagedJar(Path targetPath) {
+        if (!Files.isDirectory(targetPath)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.list(targetPath)) {
+            return files
+                .filter(p -> p.getFileName().toString().endsWith(".jar"))
+                .filter(ServerLauncher::isRepackaged)
+                .findFirst();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean isRepackaged(Path jar) {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Manifest manifest = jarFile.getManifest();
+            return manifest != null && manifest.getMainAttributes().getValue("Start-Class") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private record TimedServerHandle(ServerHandle handle, String part) implements ServerHandle {
+
+        @Override
+        public void awaitReady(long timeoutSeconds) {
+            handle.awaitReady(timeoutSeconds);
+        }
+
+        @Override
+        public OptionalLong peakResidentBytes() {
+            return handle.peakResidentBytes();
+        }
+
+        @Override
+        public void close() {
+            GradingMetrics.INSTANCE.timeRun(GradingMetrics.Phase.PORT_RELEASE, part, handle::close);
+        }
+    }
+
+    /**
+     * `spring-boot:run` execution, whose output and process are owned by the toolkit, so only the port can be watched.
+     */
+    private record MavenServerHandle(int port, MavenExecutionHandle handle) implements ServerHandle {
+
+        @Override
+        public void awaitReady(long timeoutSeconds) {
+            PortProbe.awaitListening(port, timeoutSeconds, new CompletableFuture<>());
+        }
+
+        @Override
+        public void close() {
+            try {
+                handle.close();
+            } finally {
+                Ports.waitForPortToBeFreed(port, TimeUnit.SECONDS, 5L);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.GradingMetrics;
+import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.Parsed;
+import com.github.lernejo.korekto.grader.travel_agency.TravelAgencyApiClient;
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Optional part, enabled with `-DSITE_PERFORMANCE=true`, loading the **site** server with many concurrent users.
+ * <p>
+ * Points are split between the `/api/travels` latency (p95), the throughput and the number of prediction-engine calls made per travel query,
+ * each checked against a threshold configurable with a system property.
+ * Inscriptions come from an {@link InscriptionGenerator}, seeded with `-DSITE_PERFORMANCE_SEED` if set, so that every answer is checked as well.
+ */
+public class SitePerformanceGrader implements PartGrader<LaunchingContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SitePerformanceGrader.class);
+
+    private final int users = Integer.parseInt(System.getProperty("SITE_PERFORMANCE_USERS", "200"));
+    private final int concurrency = Integer.parseInt(System.getProperty("SITE_PERFORMANCE_CONCURRENCY", "16"));
+    private final double maxP95Millis = Double.parseDouble(System.getProperty("SITE_PERFORMANCE_MAX_P95_MS", "500"));
+    private final double minRequestsPerSecond = Double.parseDouble(System.getProperty("SITE_PERFORMANCE_MIN_RPS", "20"));
+    private final double maxUpstreamCallsPerQuery = Double.parseDouble(System.getProperty("SITE_PERFORMANCE_MAX_UPSTREAM_CALLS_PER_QUERY", "5"));
+    private final String seed = System.getProperty("SITE_PERFORMANCE_SEED");
+
+    @Override
+    public String name() {
+        return "Site performance";
+    }
+
+    @Override
+    public Double maxGrade() {
+        return 2.0D;
+    }
+
+    @Override
+    public GradePart grade(LaunchingContext context) {
+        if (context.hasCompilationFailed()) {
+            return result(List.of("Not trying to start **site** server as compilation failed"), 0.0D);
+        }
+        if (context.siteServerFailed()) {
+            return result(List.of("Skipping due to previous errors"), 0.0D);
+        }
+        long generatorSeed = seed != null ? Long.parseLong(seed) : context.randomSource(this).nextInt(Integer.MAX_VALUE);
+        InscriptionGenerator generator = new InscriptionGenerator(generatorSeed, Dataset.forExercise(context.getExercise().getRoot()).countries());
+        List<InscriptionGenerator.GeneratedInscription> inscriptions = generator.stream().limit(users).toList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            PredictionServer predictionServer = SiteServer.obtain(context, context.randomSource(this)).useScenario(generator.predictionFunction());
+
+            Load inscriptionLoad = load(executor, inscriptions, i -> context.travelAgencyApiClient.postInscription(i.inscription()), (i, body) -> true);
+            if (inscriptionLoad.failures() > 0) {
+                return result(List.of(inscriptionLoad.failures() + " out of " + users + " concurrent `POST /api/inscription` failed"), 0.0D);
+            }
+
+            long upstreamCallsBefore = predictionServer.requestCount();
+            Load travelLoad = load(executor, inscriptions, i -> context.travelAgencyApiClient.getTravels(i.inscription().userName()), SitePerformanceGrader::hasExpectedCountries);
+            double upstreamCallsPerQuery = (predictionServer.requestCount() - upstreamCallsBefore) / (double) users;
+            logger.info("GET /api/travels: " + travelLoad.latencies() + ", " + String.format(Locale.US, "%.1f", travelLoad.requestsPerSecond()) + " req/s, "
+                + String.format(Locale.US, "%.2f", upstreamCallsPerQuery) + " prediction-engine calls per query");
+            if (travelLoad.failures() > 0) {
+                return result(List.of(travelLoad.failures() + " out of " + users + " concurrent `GET /api/travels` failed"), 0.0D);
+            }
+            if (travelLoad.wrongAnswers() > 0) {
+                return result(List.of(travelLoad.wrongAnswers() + " out of " + users + " concurrent `GET /api/travels` did not answer the expected countries"), 0.0D);
+            }
+
+            double grade = maxGrade();
+            List<String> errors = new ArrayList<>();
+            if (travelLoad.latencies().p95() > maxP95Millis) {
+                grade -= maxGrade() / 3;
+                errors.add("`GET /api/travels` is too slow under load, expected a p95 latency under " + maxP95Millis + " ms but got " + travelLoad.latencies());
+            }
+            if (travelLoad.requestsPerSecond() < minRequestsPerSecond) {
+                grade -= maxGrade() / 3;
+                errors.add("`GET /api/travels` throughput is too low, expected at least " + minRequestsPerSecond + " req/s but got " + String.format(Locale.US, "%.1f", travelLoad.requestsPerSecond()) + " req/s");
+            }
+            if (upstreamCallsPerQuery > maxUpstreamCallsPerQuery) {
+                grade -= maxGrade() / 3;
+                errors.add("Too many calls to the prediction-engine, expected at most " + maxUpstreamCallsPerQuery + " per `GET /api/travels` but got " + String.format(Locale.US, "%.2f", upstreamCallsPerQuery) + ", consider caching predictions");
+            }
+            return result(errors, grade);
+        } catch (CancellationException e) {
+            context.markAsTransientFailure();
+            return result(List.of("Server failed to start within " + context.serverStartTimeout + " sec."), 0.0D);
+        } catch (ServerExitedException e) {
+            return result(List.of(e.getMessage()), 0.0D);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> Load load(ExecutorService executor,
+                          List<InscriptionGenerator.GeneratedInscription> inscriptions,
+                          Function<InscriptionGenerator.GeneratedInscription, Call<T>> callFactory,
+                          BiPredicate<InscriptionGenerator.GeneratedInscription, T> answerCheck) {
+        LatencyRecorder recorder = new LatencyRecorder(inscriptions.size());
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger wrongAnswers = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (InscriptionGenerator.GeneratedInscription inscription : inscriptions) {
+            futures.add(executor.submit(GradingMetrics.INSTANCE.inCurrentPart(() -> {
+                long callStart = System.nanoTime();
+                try {
+                    Response<T> response = callFactory.apply(inscription).execute();
+                    if (!response.isSuccessful()) {
+                        failures.incrementAndGet();
+                    } else if (!answerCheck.test(inscription, response.body())) {
+                        wrongAnswers.incrementAndGet();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    recorder.record(System.nanoTime() - callStart);
+                }
+            })));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                failures.incrementAndGet();
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000D;
+        return new Load(recorder.distribution(), inscriptions.size() / elapsedSeconds, failures.get(), wrongAnswers.get());
+    }
+
+    private static boolean hasExpectedCountries(InscriptionGenerator.GeneratedInscription inscription, Parsed<List<TravelAgencyApiClient.Travel>> travels) {
+        if (Parsed.isMissingOrInvalid(travels)) {
+            return false;
+        }
+        Set<String> actualCountries = travels.value().stream().map(t -> t.country().toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+        return actualCountries.equals(inscription.expectedMatchingCountries());
+    }
+
+    private record Load(LatencyRecorder.Distribution latencies, double requestsPerSecond, int failures, int wrongAnswers) {
+    }
+}
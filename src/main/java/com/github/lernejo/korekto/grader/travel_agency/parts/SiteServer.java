@@ -0,0 +1,87 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.LaunchingContext;
+import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Function;
+
+/**
+ * **site** server started once and shared by all the parts exercising it, along with the {@link PredictionServer} stub it calls.
+ * <p>
+ * Each part switches the stub behavior with {@link #useScenario(Function)}, the server is stopped through {@link LaunchingContext#closeSiteServer()}.
+ */
+public class SiteServer implements AutoCloseable {
+
+    private final PredictionServer predictionServer;
+    private final ServerHandle handle;
+
+    private SiteServer(PredictionServer predictionServer, ServerHandle handle) {
+        this.predictionServer = predictionServer;
+        this.handle = handle;
+    }
+
+    /**
+     * @throws java.util.concurrent.CancellationException if the server fails to start within {@link LaunchingContext#serverStartTimeout}
+     * @param random source of the stub predictions until a scenario is set, the one of the part starting the server
+     * @throws ServerExitedException                      if the server exits before being ready
+     */
+    static SiteServer obtain(LaunchingContext context, RandomSupplier random) {
+        SiteServer siteServer = context.getSiteServer();
+        if (siteServer == null) {
+            siteServer = start(context, random);
+            context.setSiteServer(siteServer);
+        }
+        return siteServer;
+    }
+
+    private static SiteServer start(LaunchingContext context, RandomSupplier random) {
+        PredictionServer predictionServer = new PredictionServer(context.predictionServerPort,
+            PredictionServer.defaultPrediction(Dataset.forExercise(context.getExercise().getRoot()), random));
+        ServerHandle handle = null;
+        try {
+            handle = ServerLauncher.launch(context, "site", context.siteServerPort, Map.of(
+                "tackEnabled", "true",
+                "tackRedirectPort", String.valueOf(context.predictionServerPort)));
+            ServerLauncher.awaitReady(context, "site", context.siteServerPort, handle);
+            return new SiteServer(predictionServer, handle);
+        } catch (RuntimeException e) {
+            if (handle != null) {
+                handle.close();
+            }
+            predictionServer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Swaps the behavior of the prediction stub and forgets the exchanges recorded for the previous scenario.
+     */
+    PredictionServer useScenario(Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction) {
+        return useScenario(predictionFunction, FaultProfile.NONE, 0);
+    }
+
+    PredictionServer useScenario(Function<String, Optional<PredictionApiClient.Prediction>> predictionFunction, FaultProfile faultProfile, int historyLength) {
+        predictionServer.useScenario(predictionFunction, faultProfile, historyLength);
+        return predictionServer;
+    }
+
+    /**
+     * @see ServerHandle#peakResidentBytes()
+     */
+    OptionalLong peakResidentBytes() {
+        return handle.peakResidentBytes();
+    }
+
+    @Override
+    public void close() {
+        try {
+            handle.close();
+        } finally {
+            predictionServer.close();
+        }
+    }
+}
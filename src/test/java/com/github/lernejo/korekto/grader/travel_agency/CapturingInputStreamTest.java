@@ -0,0 +1,85 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+class CapturingInputStreamTest {
+
+    @Test
+    void whole_short_body_is_captured() throws IOException {
+        CapturingInputStream input = new CapturingInputStream(stream("{\"country\":\"France\"}"), 64, 1024);
+
+        input.readAllBytes();
+
+        Assertions.assertThat(input.capturedText()).isEqualTo("{\"country\":\"France\"}");
+        Assertions.assertThat(input.count()).isEqualTo(20L);
+    }
+
+    @Test
+    void only_first_bytes_of_a_long_body_are_captured() throws IOException {
+        CapturingInputStream input = new CapturingInputStream(stream("0123456789abcdef"), 4, 1024);
+
+        input.readAllBytes();
+
+        Assertions.assertThat(input.capturedText()).isEqualTo("0123\n[... truncated after 4 bytes]");
+    }
+
+    @Test
+    void single_byte_reads_are_captured() throws IOException {
+        CapturingInputStream input = new CapturingInputStream(stream("abc"), 2, 1024);
+
+        Assertions.assertThat(input.read()).isEqualTo((int) 'a');
+        Assertions.assertThat(input.read()).isEqualTo((int) 'b');
+        Assertions.assertThat(input.read()).isEqualTo((int) 'c');
+        Assertions.assertThat(input.read()).isEqualTo(-1);
+
+        Assertions.assertThat(input.capturedText()).isEqualTo("ab\n[... truncated after 2 bytes]");
+    }
+
+    @Test
+    void capture_is_filled_past_where_reading_stopped() throws IOException {
+        CapturingInputStream input = new CapturingInputStream(stream("{\"country\": oops, \"temperatures\": []}"), 16, 1024);
+        input.read(new byte[12], 0, 12);
+
+        input.fillCapture();
+
+        Assertions.assertThat(input.capturedText()).isEqualTo("{\"country\": oops\n[... truncated after 16 bytes]");
+    }
+
+    @Test
+    void filled_capture_of_a_whole_body_is_not_truncated() throws IOException {
+        CapturingInputStream input = new CapturingInputStream(stream("{\"country\": oops}"), 17, 1024);
+        input.read(new byte[12], 0, 12);
+
+        input.fillCapture();
+
+        Assertions.assertThat(input.capturedText()).isEqualTo("{\"country\": oops}");
+    }
+
+    @Test
+    void reading_beyond_the_maximum_size_fails() throws IOException {
+        CapturingInputStream input = new CapturingInputStream(stream("0123456789"), 4, 8);
+        input.read(new byte[8], 0, 8);
+
+        Assertions.assertThatThrownBy(() -> input.read(new byte[8], 0, 8))
+            .isInstanceOf(CapturingInputStream.BodyTooLargeException.class)
+            .hasMessageContaining("Response body exceeds 8 bytes");
+    }
+
+    @Test
+    void skipping_beyond_the_maximum_size_fails() {
+        CapturingInputStream input = new CapturingInputStream(stream("0123456789"), 4, 8);
+
+        Assertions.assertThatThrownBy(() -> input.skip(9))
+            .isInstanceOf(CapturingInputStream.BodyTooLargeException.class);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
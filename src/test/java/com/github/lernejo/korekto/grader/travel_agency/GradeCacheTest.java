@@ -0,0 +1,242 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.github.lernejo.korekto.toolkit.GradePart;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+class GradeCacheTest {
+
+    private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+
+    @TempDir
+    Path cacheDirectory;
+
+    @TempDir
+    Path exerciseRoot;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("GRADE_CACHE_DIR");
+        System.clearProperty("GRADE_CACHE_VERSION");
+        System.clearProperty("GRADE_CACHE_CAPACITY");
+        System.clearProperty("GRADE_CACHE");
+    }
+
+    @Test
+    void cache_is_disabled_without_directory() {
+        Assertions.assertThat(GradeCache.fromSystemProperties()).isNull();
+    }
+
+    @Test
+    void key_changes_with_the_grader_version() throws IOException {
+        initGitRepository(COMMIT);
+
+        Optional<String> firstVersionKey = open("1.0.0").keyOf(exerciseRoot);
+        Optional<String> secondVersionKey = open("1.0.1").keyOf(exerciseRoot);
+
+        Assertions.assertThat(firstVersionKey).isPresent();
+        Assertions.assertThat(secondVersionKey).isPresent();
+        Assertions.assertThat(firstVersionKey).isNotEqualTo(secondVersionKey);
+        Assertions.assertThat(open("1.0.0").keyOf(exerciseRoot)).isEqualTo(firstVersionKey);
+    }
+
+    @Test
+    void key_changes_with_the_head_commit() throws IOException {
+        GradeCache cache = open("1.0.0");
+        initGitRepository(COMMIT);
+        Optional<String> firstKey = cache.keyOf(exerciseRoot);
+
+        Files.writeString(exerciseRoot.resolve(".git/refs/heads/main"), "fedcba9876543210fedcba9876543210fedcba98\n");
+
+        Assertions.assertThat(cache.keyOf(exerciseRoot)).isNotEqualTo(firstKey);
+    }
+
+    @Test
+    void key_is_empty_without_git_repository() {
+        Assertions.assertThat(open("1.0.0").keyOf(exerciseRoot)).isEmpty();
+    }
+
+    @Test
+    void head_commit_is_read_from_packed_refs() throws IOException {
+        Files.createDirectories(exerciseRoot.resolve(".git"));
+        Files.writeString(exerciseRoot.resolve(".git/HEAD"), "ref: refs/heads/main\n");
+        Files.writeString(exerciseRoot.resolve(".git/packed-refs"), "# pack-refs with: peeled fully-peeled sorted\n" + COMMIT + " refs/heads/main\n");
+
+        Assertions.assertThat(GradeCache.headCommit(exerciseRoot)).contains(COMMIT);
+    }
+
+    @Test
+    void detached_head_commit_is_read_from_head() throws IOException {
+        Files.createDirectories(exerciseRoot.resolve(".git"));
+        Files.writeString(exerciseRoot.resolve(".git/HEAD"), COMMIT + "\n");
+
+        Assertions.assertThat(GradeCache.headCommit(exerciseRoot)).contains(COMMIT);
+    }
+
+    @Test
+    void module_key_only_changes_with_the_module() throws IOException {
+        writeModule("site", "class Site {}");
+        writeModule("prediction-engine", "class Engine {}");
+        GradeCache cache = open("1.0.0");
+        Optional<String> siteKey = cache.moduleKeyOf(exerciseRoot, "site", "Part 5");
+
+        writeModule("prediction-engine", "class Engine { int changed; }");
+
+        Assertions.assertThat(cache.moduleKeyOf(exerciseRoot, "site", "Part 5")).isEqualTo(siteKey);
+
+        writeModule("site", "class Site { int changed; }");
+
+        Assertions.assertThat(cache.moduleKeyOf(exerciseRoot, "site", "Part 5")).isNotEqualTo(siteKey);
+    }
+
+    @Test
+    void module_key_changes_with_the_modules_it_depends_on() throws IOException {
+        writeMultiModuleProject();
+        GradeCache cache = open("1.0.0");
+        Optional<String> siteKey = cache.moduleKeyOf(exerciseRoot, "site", "Part 4");
+        Optional<String> engineKey = cache.moduleKeyOf(exerciseRoot, "prediction-engine", "Part 5");
+
+        Files.writeString(exerciseRoot.resolve("common/src/main/java/Source.java"), "class Common { int changed; }");
+
+        Assertions.assertThat(cache.moduleKeyOf(exerciseRoot, "site", "Part 4")).isNotEqualTo(siteKey);
+        Assertions.assertThat(cache.moduleKeyOf(exerciseRoot, "prediction-engine", "Part 5")).isEqualTo(engineKey);
+    }
+
+    @Test
+    void whole_build_key_changes_with_any_module() throws IOException {
+        writeMultiModuleProject();
+        GradeCache cache = open("1.0.0");
+        Optional<String> buildKey = cache.moduleKeyOf(exerciseRoot, GradeCache.ALL_MODULES, "Part 1");
+
+        Files.writeString(exerciseRoot.resolve("README.md"), "Not a module");
+
+        Assertions.assertThat(cache.moduleKeyOf(exerciseRoot, GradeCache.ALL_MODULES, "Part 1")).isEqualTo(buildKey);
+
+        Files.writeString(exerciseRoot.resolve("prediction-engine/src/main/java/Source.java"), "class Engine { int changed; }");
+
+        Assertions.assertThat(cache.moduleKeyOf(exerciseRoot, GradeCache.ALL_MODULES, "Part 1")).isNotEqualTo(buildKey);
+    }
+
+    @Test
+    void stored_grades_are_found_again_after_reopening_the_index() {
+        GradeCache cache = open("1.0.0");
+        List<GradePart> grades = List.of(new GradePart("Part 1", 2.0D, 2.0D, List.of()), new GradePart("Part 2", 0.5D, 1.0D, List.of("Missing CI")));
+
+        cache.store("exercise-a", grades);
+
+        Assertions.assertThat(open("1.0.0").lookup("exercise-a")).contains(grades);
+        Assertions.assertThat(open("1.0.0").lookup("exercise-b")).isEmpty();
+    }
+
+    @Test
+    void colliding_slots_are_probed() {
+        System.setProperty("GRADE_CACHE_CAPACITY", "16");
+        GradeCache cache = open("1.0.0");
+        // 12 entries fill the 16 slots up to the load factor, so that some of them collide
+        for (int i = 0; i < 12; i++) {
+            cache.store("exercise-" + i, grades(i));
+        }
+
+        for (int i = 0; i < 12; i++) {
+            Assertions.assertThat(cache.lookup("exercise-" + i)).contains(grades(i));
+        }
+    }
+
+    @Test
+    void full_index_does_not_store_more_grades() {
+        System.setProperty("GRADE_CACHE_CAPACITY", "16");
+        GradeCache cache = open("1.0.0");
+        for (int i = 0; i < 13; i++) {
+            cache.store("exercise-" + i, List.of(new GradePart("Part 1", 1.0D, 1.0D, List.of())));
+        }
+
+        Assertions.assertThat(cache.lookup("exercise-12")).isEmpty();
+    }
+
+    @Test
+    void bypassed_cache_is_not_read_but_refreshed() {
+        System.setProperty("GRADE_CACHE", "bypass");
+        List<GradePart> grades = List.of(new GradePart("Part 1", 2.0D, 2.0D, List.of()));
+        open("1.0.0").store("exercise-a", grades);
+
+        Assertions.assertThat(open("1.0.0").lookup("exercise-a")).isEmpty();
+
+        System.clearProperty("GRADE_CACHE");
+
+        Assertions.assertThat(open("1.0.0").lookup("exercise-a")).contains(grades);
+    }
+
+    @Test
+    void stored_part_is_reused_and_tells_whether_it_was_perfect() {
+        GradeCache cache = open("1.0.0");
+        cache.storePart("site", new GradePart("Part 5", 2.0D, 2.0D, List.of()), List.of(600, -3));
+        cache.storePart("engine", new GradePart("Part 4", 1.0D, 2.0D, List.of("Slow")), List.of());
+
+        Assertions.assertThat(cache.lookupPart("site").orElseThrow().perfect()).isTrue();
+        Assertions.assertThat(cache.lookupPart("site").orElseThrow().randomDraws()).containsExactly(600, -3);
+        Assertions.assertThat(cache.lookupPart("engine").orElseThrow().perfect()).isFalse();
+    }
+
+    private static List<GradePart> grades(int grade) {
+        return List.of(new GradePart("Part 1", (double) grade, 12.0D, List.of()));
+    }
+
+    private GradeCache open(String version) {
+        System.setProperty("GRADE_CACHE_DIR", cacheDirectory.toString());
+        System.setProperty("GRADE_CACHE_VERSION", version);
+        GradeCache cache = GradeCache.fromSystemProperties();
+        Assertions.assertThat(cache).isNotNull();
+        return cache;
+    }
+
+    private void initGitRepository(String commit) throws IOException {
+        Files.createDirectories(exerciseRoot.resolve(".git/refs/heads"));
+        Files.writeString(exerciseRoot.resolve(".git/HEAD"), "ref: refs/heads/main\n");
+        Files.writeString(exerciseRoot.resolve(".git/refs/heads/main"), commit + "\n");
+    }
+
+    /**
+     * **site** depends on **common**, **prediction-engine** depends on nothing but a library.
+     */
+    private void writeMultiModuleProject() throws IOException {
+        Files.writeString(exerciseRoot.resolve("pom.xml"), """
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <artifactId>travel-agency</artifactId>
+                <modules>
+                    <module>common</module>
+                    <module>site</module>
+                    <module>prediction-engine</module>
+                </modules>
+            </project>
+            """);
+        writeModulePom("common", "travel-agency-common", "");
+        writeModulePom("site", "travel-agency-site", "<dependency><groupId>fr.lernejo</groupId><artifactId>travel-agency-common</artifactId></dependency>");
+        writeModulePom("prediction-engine", "travel-agency-prediction-engine", "<dependency><groupId>org.springframework.boot</groupId><artifactId>spring-boot-starter-web</artifactId></dependency>");
+    }
+
+    private void writeModulePom(String module, String artifactId, String dependencies) throws IOException {
+        Path sources = Files.createDirectories(exerciseRoot.resolve(module).resolve("src/main/java"));
+        Files.writeString(exerciseRoot.resolve(module).resolve("pom.xml"), """
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <artifactId>%s</artifactId>
+                <dependencies>%s</dependencies>
+            </project>
+            """.formatted(artifactId, dependencies));
+        Files.writeString(sources.resolve("Source.java"), "class " + module.replace("-", "") + " {}");
+    }
+
+    private void writeModule(String module, String source) throws IOException {
+        Path sources = Files.createDirectories(exerciseRoot.resolve(module).resolve("src/main/java"));
+        Files.writeString(exerciseRoot.resolve("pom.xml"), "<project/>");
+        Files.writeString(exerciseRoot.resolve(module).resolve("pom.xml"), "<project/>");
+        Files.writeString(sources.resolve("Source.java"), source);
+    }
+}
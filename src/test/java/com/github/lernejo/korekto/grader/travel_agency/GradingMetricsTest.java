@@ -0,0 +1,59 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+class GradingMetricsTest {
+
+    private final GradingMetrics metrics = new GradingMetrics();
+
+    @Test
+    void task_submitted_by_a_part_is_attributed_to_it_on_another_thread() throws Exception {
+        AtomicReference<String> partOfTask = new AtomicReference<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            metrics.withinPart("Site performance", () -> {
+                try {
+                    return executor.submit(metrics.inCurrentPart(() -> partOfTask.set(metrics.currentPart()))).get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            Assertions.assertThat(partOfTask.get()).isEqualTo("Site performance");
+            // The pool thread does not keep the attribution for later tasks
+            Assertions.assertThat(executor.submit(metrics::currentPart).get(5, TimeUnit.SECONDS)).isEqualTo("none");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void task_submitted_outside_of_a_part_is_not_attributed() {
+        AtomicReference<String> partOfTask = new AtomicReference<>();
+
+        metrics.inCurrentPart(() -> partOfTask.set(metrics.currentPart())).run();
+
+        Assertions.assertThat(partOfTask.get()).isEqualTo("none");
+    }
+
+    @Test
+    void part_of_the_running_thread_is_restored_after_the_task() {
+        AtomicReference<String> partAfterTask = new AtomicReference<>();
+        Runnable task = metrics.withinPart("Part 6", () -> metrics.inCurrentPart(() -> {
+        }));
+
+        metrics.withinPart("Part 5", () -> {
+            task.run();
+            partAfterTask.set(metrics.currentPart());
+            return null;
+        });
+
+        Assertions.assertThat(partAfterTask.get()).isEqualTo("Part 5");
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.github.lernejo.korekto.toolkit.GradePart;
+import com.github.lernejo.korekto.toolkit.PartGrader;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.github.lernejo.korekto.grader.travel_agency.Prerequisite.COMPILED_SOURCES;
+import static com.github.lernejo.korekto.grader.travel_agency.Prerequisite.GIT_TREE;
+import static com.github.lernejo.korekto.grader.travel_agency.Prerequisite.STUDENT_SERVERS;
+import static com.github.lernejo.korekto.grader.travel_agency.ScheduledPart.needing;
+
+class PartSchedulerTest {
+
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final List<String> ended = new CopyOnWriteArrayList<>();
+    private final Map<String, GradePart> results = new ConcurrentHashMap<>();
+
+    @Test
+    void results_are_in_the_order_of_the_parts() {
+        List<ScheduledPart> parts = List.of(
+            needing(part("slow"), GIT_TREE),
+            needing(part("fast"), GIT_TREE));
+
+        List<GradePart> grades = new PartScheduler(2).grade(parts, recording(name -> {
+            if (name.equals("slow")) {
+                sleep(100);
+            }
+        }));
+
+        Assertions.assertThat(grades).containsExactly(results.get("slow"), results.get("fast"));
+    }
+
+    @Test
+    void independent_parts_are_graded_concurrently() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<ScheduledPart> parts = List.of(
+            needing(part("git history"), GIT_TREE),
+            needing(part("ci"), GIT_TREE));
+
+        new PartScheduler(2).grade(parts, recording(name -> {
+            bothStarted.countDown();
+            await(bothStarted);
+        }));
+
+        Assertions.assertThat(bothStarted.getCount()).isEqualTo(0L);
+    }
+
+    @Test
+    void part_needing_a_prerequisite_is_graded_once_its_provider_is_done() {
+        List<ScheduledPart> parts = List.of(
+            needing(part("coverage"), COMPILED_SOURCES),
+            needing(part("build"), GIT_TREE).providing(COMPILED_SOURCES),
+            needing(part("style"), COMPILED_SOURCES));
+
+        new PartScheduler(4).grade(parts, recording(name -> sleep(name.equals("build") ? 50 : 0)));
+
+        Assertions.assertThat(ended.indexOf("build")).isLessThan(started.indexOf("style"));
+        // A part declared before the provider does not wait for it
+        Assertions.assertThat(started.indexOf("coverage")).isLessThan(ended.indexOf("build"));
+    }
+
+    @Test
+    void parts_needing_an_exclusive_prerequisite_are_graded_one_at_a_time_in_declaration_order() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<ScheduledPart> parts = List.of(
+            needing(part("build"), GIT_TREE).providing(COMPILED_SOURCES),
+            needing(part("site"), COMPILED_SOURCES, STUDENT_SERVERS),
+            needing(part("prediction-engine"), COMPILED_SOURCES, STUDENT_SERVERS),
+            needing(part("colder"), COMPILED_SOURCES, STUDENT_SERVERS),
+            needing(part("warmer"), COMPILED_SOURCES, STUDENT_SERVERS));
+
+        new PartScheduler(4).grade(parts, recording(name -> {
+            if (!name.equals("build")) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                // The last part is the fastest, so that it would overtake the others if it could
+                sleep(name.equals("warmer") ? 0 : 30);
+                running.decrementAndGet();
+            }
+        }));
+
+        Assertions.assertThat(maxRunning.get()).isEqualTo(1);
+        Assertions.assertThat(started).containsExactly("build", "site", "prediction-engine", "colder", "warmer");
+    }
+
+    @Test
+    void failed_part_does_not_keep_the_next_ones_from_being_graded_and_its_failure_is_rethrown() {
+        List<ScheduledPart> parts = List.of(
+            needing(part("build"), GIT_TREE).providing(COMPILED_SOURCES),
+            needing(part("site"), COMPILED_SOURCES, STUDENT_SERVERS),
+            needing(part("prediction-engine"), COMPILED_SOURCES, STUDENT_SERVERS));
+
+        Assertions.assertThatThrownBy(() -> new PartScheduler(2).grade(parts, recording(name -> {
+                if (name.equals("build")) {
+                    throw new IllegalStateException("Maven crashed");
+                }
+            })))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("Maven crashed");
+        Assertions.assertThat(ended).containsExactly("site", "prediction-engine");
+    }
+
+    private Function<ScheduledPart, GradePart> recording(java.util.function.Consumer<String> grading) {
+        return part -> {
+            String name = part.grader().name();
+            started.add(name);
+            grading.accept(name);
+            ended.add(name);
+            GradePart result = new GradePart(name, 1.0D, 1.0D, List.of());
+            results.put(name, result);
+            return result;
+        };
+    }
+
+    private static PartGrader<LaunchingContext> part(String name) {
+        return new PartGrader<>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public GradePart grade(LaunchingContext context) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
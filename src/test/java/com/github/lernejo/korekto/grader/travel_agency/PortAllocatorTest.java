@@ -0,0 +1,94 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class PortAllocatorTest {
+
+    private static final int RANGE_START = 47_300;
+    private static final int RANGE_SIZE = 16;
+
+    private final PortAllocator allocator = new PortAllocator();
+
+    @Test
+    void lease_starts_at_the_given_offset() {
+        PortAllocator.PortLease lease = allocator.lease(RANGE_START, RANGE_SIZE, 3);
+
+        Assertions.assertThat(lease.port).isEqualTo(RANGE_START + 3);
+    }
+
+    @Test
+    void leased_port_is_not_leased_again_until_released() {
+        PortAllocator.PortLease first = allocator.lease(RANGE_START, RANGE_SIZE, 3);
+        PortAllocator.PortLease second = allocator.lease(RANGE_START, RANGE_SIZE, 3);
+
+        Assertions.assertThat(second.port).isEqualTo(RANGE_START + 4);
+
+        first.close();
+
+        Assertions.assertThat(allocator.lease(RANGE_START, RANGE_SIZE, 3).port).isEqualTo(RANGE_START + 3);
+    }
+
+    @Test
+    void offset_wraps_around_the_range() {
+        Assertions.assertThat(allocator.lease(RANGE_START, RANGE_SIZE, RANGE_SIZE - 1).port).isEqualTo(RANGE_START + RANGE_SIZE - 1);
+        Assertions.assertThat(allocator.lease(RANGE_START, RANGE_SIZE, RANGE_SIZE - 1).port).isEqualTo(RANGE_START);
+    }
+
+    @Test
+    void bound_port_is_skipped() throws IOException {
+        try (ServerSocket boundSocket = new ServerSocket()) {
+            boundSocket.bind(new InetSocketAddress(RANGE_START + 5));
+
+            Assertions.assertThat(allocator.lease(RANGE_START, RANGE_SIZE, 5).port).isEqualTo(RANGE_START + 6);
+        }
+    }
+
+    @Test
+    void exhausted_range_is_reported() {
+        for (int i = 0; i < 4; i++) {
+            allocator.lease(RANGE_START, 4, 0);
+        }
+
+        Assertions.assertThatThrownBy(() -> allocator.lease(RANGE_START, 4, 0))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("No free port left between " + RANGE_START + " and " + (RANGE_START + 3));
+    }
+
+    @Test
+    void concurrent_leases_get_distinct_ports() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(RANGE_SIZE);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<PortAllocator.PortLease>> leases = new ArrayList<>();
+            for (int i = 0; i < RANGE_SIZE; i++) {
+                leases.add(executor.submit(() -> {
+                    start.await();
+                    return allocator.lease(RANGE_START, RANGE_SIZE, 0);
+                }));
+            }
+            start.countDown();
+            Set<Integer> ports = ConcurrentHashMap.newKeySet();
+            for (Future<PortAllocator.PortLease> lease : leases) {
+                ports.add(lease.get(10, TimeUnit.SECONDS).port);
+            }
+
+            Assertions.assertThat(ports).hasSize(RANGE_SIZE);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+class RandomSupplierTest {
+
+    @Test
+    void uuid_is_derived_from_bounded_draws() {
+        RandomSupplier randomSupplier = new Random(42L)::nextInt;
+
+        Assertions.assertThat(randomSupplier.nextUuid().toString()).isEqualTo("ba410dfe-aee7-4c45-8f08-f12b46eeb52c");
+    }
+
+    @Test
+    void uuid_of_a_generator_is_derived_from_its_32_bits_draws() {
+        RandomSupplier randomSupplier = RandomSupplier.of(new Random(42L));
+
+        Assertions.assertThat(randomSupplier.nextUuid().toString()).isEqualTo("ba419d35-0dfe-4af7-aee7-bbe10c45c028");
+    }
+
+    @Test
+    void uuid_is_a_version_4_one() {
+        RandomSupplier randomSupplier = new Random(42L)::nextInt;
+
+        UUID uuid = randomSupplier.nextUuid();
+
+        Assertions.assertThat(uuid.version()).isEqualTo(4);
+        Assertions.assertThat(uuid.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void same_seed_gives_same_values() {
+        RandomSupplier first = new Random(42L)::nextInt;
+        RandomSupplier second = new Random(42L)::nextInt;
+        byte[] firstBytes = new byte[11];
+        byte[] secondBytes = new byte[11];
+
+        first.nextBytes(firstBytes);
+        second.nextBytes(secondBytes);
+
+        Assertions.assertThat(firstBytes).isEqualTo(secondBytes);
+        Assertions.assertThat(first.nextLong()).isEqualTo(second.nextLong());
+        Assertions.assertThat(first.nextUuid()).isEqualTo(second.nextUuid());
+    }
+}
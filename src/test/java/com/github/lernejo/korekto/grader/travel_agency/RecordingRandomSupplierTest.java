@@ -0,0 +1,57 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+class RecordingRandomSupplierTest {
+
+    @Test
+    void recorded_draws_are_the_calls_made() {
+        RecordingRandomSupplier recorder = new RecordingRandomSupplier(RandomSupplier.of(new Random(7L)));
+
+        recorder.nextInt(600);
+        recorder.nextBoolean();
+        recorder.nextUuid();
+        recorder.nextInt();
+
+        Assertions.assertThat(recorder.draws()).containsExactly(600, -2, -3, -1);
+    }
+
+    @Test
+    void derived_draws_are_recorded_as_the_draws_they_are_made_of() {
+        RecordingRandomSupplier recorder = new RecordingRandomSupplier(RandomSupplier.of(new Random(7L)));
+
+        recorder.nextLong();
+
+        Assertions.assertThat(recorder.draws()).containsExactly(-1, -1);
+    }
+
+    @Test
+    void replayed_draws_leave_the_source_as_the_recorded_ones() {
+        RecordingRandomSupplier graded = new RecordingRandomSupplier(RandomSupplier.of(new Random(42L)));
+        graded.nextUuid();
+        for (int i = 0; i < 10; i++) {
+            graded.nextInt(15 + i);
+        }
+        graded.nextBoolean();
+        graded.nextInt();
+        RecordingRandomSupplier reused = new RecordingRandomSupplier(RandomSupplier.of(new Random(42L)));
+
+        reused.replay(graded.draws());
+
+        Assertions.assertThat(reused.nextInt(1_000_000)).isEqualTo(graded.nextInt(1_000_000));
+        Assertions.assertThat(reused.nextUuid()).isEqualTo(graded.nextUuid());
+    }
+
+    @Test
+    void replayed_draws_are_recorded_as_well() {
+        RecordingRandomSupplier recorder = new RecordingRandomSupplier(RandomSupplier.of(new Random(7L)));
+
+        recorder.replay(List.of(3, -2));
+
+        Assertions.assertThat(recorder.draws()).containsExactly(3, -2);
+    }
+}
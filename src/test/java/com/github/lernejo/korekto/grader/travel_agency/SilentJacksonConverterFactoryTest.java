@@ -0,0 +1,76 @@
+package com.github.lernejo.korekto.grader.travel_agency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import retrofit2.Converter;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+
+class SilentJacksonConverterFactoryTest {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final SilentJacksonConverterFactory factory = SilentJacksonConverterFactory.create(new ObjectMapper(), 16, 1024);
+
+    @SuppressWarnings("unused")
+    private Parsed<List<Sample>> parsedSamples;
+
+    @Test
+    void valid_body_is_parsed() throws IOException {
+        Parsed<List<Sample>> parsed = parsedConverter().convert(ResponseBody.create("[{\"country\":\"France\",\"temperature\":12}]", JSON));
+
+        Assertions.assertThat(parsed.hasProblem()).isFalse();
+        Assertions.assertThat(parsed.value()).containsExactly(new Sample("France", 12));
+    }
+
+    @Test
+    void invalid_body_is_a_problem_holding_the_body() throws IOException {
+        Parsed<List<Sample>> parsed = parsedConverter().convert(ResponseBody.create("<html>", JSON));
+
+        Assertions.assertThat(Parsed.isMissingOrInvalid(parsed)).isTrue();
+        Assertions.assertThat(parsed.problem().rawBody()).isEqualTo("<html>");
+    }
+
+    @Test
+    void excerpt_of_a_long_invalid_body_is_truncated() throws IOException {
+        Parsed<List<Sample>> parsed = parsedConverter().convert(ResponseBody.create("[{\"country\": France, \"temperature\": 12}]", JSON));
+
+        Assertions.assertThat(parsed.problem().rawBody()).isEqualTo("[{\"country\": Fra\n[... truncated after 16 bytes]");
+    }
+
+    @Test
+    void body_larger_than_the_maximum_is_a_problem() throws IOException {
+        String largeBody = "[" + "{\"country\":\"France\",\"temperature\":12},".repeat(100) + "{\"country\":\"France\",\"temperature\":12}]";
+
+        Parsed<List<Sample>> parsed = parsedConverter().convert(ResponseBody.create(largeBody, JSON));
+
+        Assertions.assertThat(parsed.problem().ex()).isInstanceOf(CapturingInputStream.BodyTooLargeException.class);
+        Assertions.assertThat(parsed.problem().rawBody()).startsWith("[{\"country\":\"Fra");
+    }
+
+    @Test
+    void invalid_body_of_a_plain_type_is_converted_to_null() throws IOException {
+        Converter<ResponseBody, ?> converter = factory.responseBodyConverter(Sample.class, new Annotation[0], null);
+
+        Assertions.assertThat(converter.convert(ResponseBody.create("not json", JSON))).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Converter<ResponseBody, Parsed<List<Sample>>> parsedConverter() {
+        try {
+            Type parsedType = SilentJacksonConverterFactoryTest.class.getDeclaredField("parsedSamples").getGenericType();
+            return (Converter<ResponseBody, Parsed<List<Sample>>>) factory.responseBodyConverter(parsedType, new Annotation[0], null);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    record Sample(String country, int temperature) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class BuildReportsTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void failed_test_compilation_is_a_compilation_failure_although_main_sources_compiled() throws URISyntaxException {
+        Path root = fixture("test-compilation-failure");
+
+        Assertions.assertThat(BuildReports.hasCompilationFailed(root, root.resolve("build.log"))).isTrue();
+    }
+
+    @Test
+    void failed_compilation_of_a_single_module_is_a_compilation_failure() throws URISyntaxException, IOException {
+        Path root = fixture("test-failure");
+        Path buildLog = temporaryDirectory.resolve("build.log");
+        Files.writeString(buildLog, """
+            [INFO] site ............................................... SUCCESS [  2.101 s]
+            [INFO] prediction-engine .................................. FAILURE [  0.734 s]
+            [INFO] BUILD FAILURE
+            [ERROR] Failed to execute goal org.apache.maven.plugins:maven-compiler-plugin:3.10.1:compile (default-compile) on project prediction-engine: Compilation failure
+            """);
+
+        Assertions.assertThat(BuildReports.hasCompilationFailed(root, buildLog)).isTrue();
+    }
+
+    @Test
+    void build_failing_after_compilation_is_not_a_compilation_failure() throws URISyntaxException {
+        Path root = fixture("test-failure");
+
+        Assertions.assertThat(BuildReports.hasCompilationFailed(root, root.resolve("build.log"))).isFalse();
+    }
+
+    @Test
+    void without_build_output_sources_left_uncompiled_are_a_compilation_failure() throws URISyntaxException {
+        Path root = fixture("test-compilation-failure");
+
+        Assertions.assertThat(BuildReports.hasCompilationFailed(root, temporaryDirectory.resolve("missing.log"))).isTrue();
+        Assertions.assertThat(BuildReports.isCompiled(root)).isFalse();
+    }
+
+    @Test
+    void failure_in_any_module_report_is_a_test_failure() throws URISyntaxException {
+        Assertions.assertThat(BuildReports.hasTestFailures(fixture("test-failure"))).isTrue();
+    }
+
+    @Test
+    void error_in_a_nested_test_suite_is_a_test_failure() throws URISyntaxException {
+        Assertions.assertThat(BuildReports.hasTestFailures(fixture("errored-suites"))).isTrue();
+    }
+
+    @Test
+    void truncated_report_is_a_test_failure() throws URISyntaxException {
+        Assertions.assertThat(BuildReports.hasTestFailures(fixture("truncated-report"))).isTrue();
+    }
+
+    @Test
+    void passing_reports_are_no_test_failure() throws URISyntaxException {
+        Assertions.assertThat(BuildReports.hasTestFailures(fixture("passing"))).isFalse();
+    }
+
+    @Test
+    void dependency_missing_offline_is_named() throws IOException {
+        Path buildLog = temporaryDirectory.resolve("build.log");
+        Files.writeString(buildLog, """
+            [INFO] BUILD FAILURE
+            [ERROR] Failed to execute goal on project site: Could not resolve dependencies for project fr.lernejo:site:jar:1.0-SNAPSHOT: Cannot access central (https://repo.maven.apache.org/maven2) in offline mode and the artifact com.github.lernejo:http-tack:jar:1.0.2 has not been downloaded from it before. -> [Help 1]
+            """);
+
+        Assertions.assertThat(BuildReports.missingArtifact(buildLog)).contains("com.github.lernejo:http-tack:jar:1.0.2");
+    }
+
+    @Test
+    void plugin_missing_from_the_repository_is_named() throws IOException {
+        Path buildLog = temporaryDirectory.resolve("build.log");
+        Files.writeString(buildLog, """
+            [ERROR] Plugin org.apache.maven.plugins:maven-surefire-plugin:2.22.2 or one of its dependencies could not be resolved: Could not find artifact org.apache.maven.plugins:maven-surefire-plugin:jar:2.22.2 in central (https://repo.maven.apache.org/maven2) -> [Help 1]
+            """);
+
+        Assertions.assertThat(BuildReports.missingArtifact(buildLog)).contains("org.apache.maven.plugins:maven-surefire-plugin:jar:2.22.2");
+    }
+
+    @Test
+    void compilation_failure_misses_no_artifact() throws URISyntaxException {
+        Path root = fixture("test-compilation-failure");
+
+        Assertions.assertThat(BuildReports.missingArtifact(root.resolve("build.log"))).isEmpty();
+        Assertions.assertThat(BuildReports.missingArtifact(temporaryDirectory.resolve("missing.log"))).isEmpty();
+    }
+
+    private static Path fixture(String name) throws URISyntaxException {
+        return Path.of(BuildReportsTest.class.getResource("/build-reports/" + name).toURI());
+    }
+}
@@ -0,0 +1,131 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class DatasetTest {
+
+    @TempDir
+    Path exerciseRoot;
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty("DATASET_SOURCE");
+    }
+
+    @Test
+    void countries_are_indexed_case_insensitively_with_their_temperatures() {
+        Dataset dataset = Dataset.parse("""
+            Country,T1,T2,T3
+            France,8,32,12.5
+            Guyana,24,36
+            """);
+
+        Assertions.assertThat(dataset.countries()).containsExactly("France", "Guyana");
+        Assertions.assertThat(dataset.temperatures("FRANCE")).isEqualTo(new double[]{8, 32, 12.5});
+        Assertions.assertThat(dataset.getByCountry("guyana")).isEqualTo(new Dataset.TempBoundaries("Guyana", 24, 36));
+        Assertions.assertThat(dataset.getByCountry("Atlantis")).isNull();
+        Assertions.assertThat(dataset.temperatures("Atlantis")).isNull();
+    }
+
+    @Test
+    void semicolons_quotes_and_decimal_commas_are_accepted() {
+        Dataset dataset = Dataset.parse("""
+            "Country";"T1";"T2"
+            "Cote d'Ivoire";"26,5";"28"
+            """);
+
+        Assertions.assertThat(dataset.temperatures("cote d'ivoire")).isEqualTo(new double[]{26.5, 28});
+    }
+
+    @Test
+    void lines_of_the_same_country_are_merged_and_lines_without_temperature_ignored() {
+        Dataset dataset = Dataset.parse("""
+            # comment
+            Brazil,3
+            Chile,,
+            brazil,9
+            ,12
+            """);
+
+        Assertions.assertThat(dataset.countries()).containsExactly("Brazil");
+        Assertions.assertThat(dataset.getByCountry("Brazil")).isEqualTo(new Dataset.TempBoundaries("Brazil", 3, 9));
+    }
+
+    @Test
+    void csv_without_country_is_the_built_in_dataset() {
+        Assertions.assertThat(Dataset.parse("Country,T1\n")).isSameAs(Dataset.BUILT_IN);
+    }
+
+    @Test
+    void exercise_dataset_is_used_by_default() throws IOException {
+        writeExerciseCsv(exerciseRoot, countries(200));
+
+        Dataset dataset = Dataset.forExercise(exerciseRoot);
+
+        Assertions.assertThat(dataset.size()).isEqualTo(200);
+    }
+
+    @Test
+    void missing_exercise_dataset_falls_back_to_the_built_in_one() {
+        Assertions.assertThat(Dataset.forExercise(exerciseRoot)).isSameAs(Dataset.BUILT_IN);
+    }
+
+    @Test
+    void built_in_dataset_can_be_forced() throws IOException {
+        writeExerciseCsv(exerciseRoot, countries(200));
+        System.setProperty("DATASET_SOURCE", "built-in");
+
+        Assertions.assertThat(Dataset.forExercise(exerciseRoot)).isSameAs(Dataset.BUILT_IN);
+    }
+
+    @Test
+    void same_content_is_parsed_once(@TempDir Path otherExerciseRoot) throws IOException {
+        String csv = countries(20);
+        writeExerciseCsv(exerciseRoot, csv);
+        writeExerciseCsv(otherExerciseRoot, csv);
+
+        Assertions.assertThat(Dataset.forExercise(otherExerciseRoot)).isSameAs(Dataset.forExercise(exerciseRoot));
+    }
+
+    @Test
+    void changed_content_is_parsed_again() throws IOException {
+        writeExerciseCsv(exerciseRoot, countries(20));
+        Dataset first = Dataset.forExercise(exerciseRoot);
+
+        writeExerciseCsv(exerciseRoot, countries(21));
+
+        Assertions.assertThat(Dataset.forExercise(exerciseRoot)).isNotSameAs(first);
+        Assertions.assertThat(Dataset.forExercise(exerciseRoot).size()).isEqualTo(21);
+    }
+
+    @Test
+    void csv_can_be_given_by_path() throws IOException {
+        Path csv = exerciseRoot.resolve("temperatures.csv");
+        Files.writeString(csv, countries(3));
+        System.setProperty("DATASET_SOURCE", csv.toString());
+
+        Assertions.assertThat(Dataset.forExercise(exerciseRoot).countries()).isEqualTo(List.of("Country 0", "Country 1", "Country 2"));
+    }
+
+    private static String countries(int count) {
+        StringBuilder csv = new StringBuilder("Country,T1,T2\n");
+        for (int i = 0; i < count; i++) {
+            csv.append("Country ").append(i).append(',').append(i % 40 - 10).append(',').append(i % 40).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static void writeExerciseCsv(Path exerciseRoot, String content) throws IOException {
+        Path csv = exerciseRoot.resolve("prediction-engine/src/main/resources/countriesTempData.csv");
+        Files.createDirectories(csv.getParent());
+        Files.writeString(csv, content);
+    }
+}
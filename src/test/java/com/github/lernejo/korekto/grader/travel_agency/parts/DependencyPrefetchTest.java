@@ -0,0 +1,96 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedSet;
+
+class DependencyPrefetchTest {
+
+    @TempDir
+    Path firstExercise;
+
+    @TempDir
+    Path secondExercise;
+
+    @Test
+    void exercises_named_differently_with_the_same_dependencies_share_their_prefetch() throws IOException {
+        writeProject(firstExercise, "fr.alice", "Alice's agency", "2.6.1");
+        writeProject(secondExercise, "fr.bob", "Travels by Bob", "2.6.1");
+
+        Assertions.assertThat(DependencyPrefetch.digest(DependencyPrefetch.declaredArtifacts(secondExercise)))
+            .isEqualTo(DependencyPrefetch.digest(DependencyPrefetch.declaredArtifacts(firstExercise)));
+    }
+
+    @Test
+    void other_dependency_version_is_prefetched_again() throws IOException {
+        writeProject(firstExercise, "fr.alice", "Alice's agency", "2.6.1");
+        writeProject(secondExercise, "fr.alice", "Alice's agency", "2.7.0");
+
+        Assertions.assertThat(DependencyPrefetch.digest(DependencyPrefetch.declaredArtifacts(secondExercise)))
+            .isNotEqualTo(DependencyPrefetch.digest(DependencyPrefetch.declaredArtifacts(firstExercise)));
+    }
+
+    @Test
+    void external_artifacts_and_repositories_are_declared_but_not_the_modules() throws IOException {
+        writeProject(firstExercise, "fr.alice", "Alice's agency", "2.6.1");
+
+        Assertions.assertThat(DependencyPrefetch.declaredArtifacts(firstExercise)).containsExactly(
+            "dependency org.springframework.boot:spring-boot-starter-web:${spring-boot.version}::",
+            "plugin org.springframework.boot:spring-boot-maven-plugin:${spring-boot.version}::",
+            "property spring-boot.version=2.6.1",
+            "repository https://jitpack.io"
+        );
+    }
+
+    @Test
+    void build_outputs_are_ignored() throws IOException {
+        writeProject(firstExercise, "fr.alice", "Alice's agency", "2.6.1");
+        SortedSet<String> declaredArtifacts = DependencyPrefetch.declaredArtifacts(firstExercise);
+        Path copiedPom = Files.createDirectories(firstExercise.resolve("site/target/classes/META-INF/maven"));
+        Files.writeString(copiedPom.resolve("pom.xml"), "<project><dependencies><dependency><artifactId>other</artifactId></dependency></dependencies></project>");
+
+        Assertions.assertThat(DependencyPrefetch.declaredArtifacts(firstExercise)).isEqualTo(declaredArtifacts);
+    }
+
+    private static void writeProject(Path root, String groupId, String name, String springBootVersion) throws IOException {
+        Files.writeString(root.resolve("pom.xml"), """
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <groupId>%s</groupId>
+                <artifactId>travel-agency</artifactId>
+                <name>%s</name>
+                <properties>
+                    <spring-boot.version>%s</spring-boot.version>
+                </properties>
+                <modules>
+                    <module>common</module>
+                    <module>site</module>
+                </modules>
+            </project>
+            """.formatted(groupId, name, springBootVersion));
+        writeModulePom(root, groupId, "common", "");
+        writeModulePom(root, groupId, "site", """
+            <dependencies>
+                <dependency><groupId>%s</groupId><artifactId>common</artifactId></dependency>
+                <dependency><groupId>org.springframework.boot</groupId><artifactId>spring-boot-starter-web</artifactId><version>${spring-boot.version}</version></dependency>
+            </dependencies>
+            <repositories><repository><id>jitpack.io</id><url>https://jitpack.io</url></repository></repositories>
+            <build><plugins><plugin><groupId>org.springframework.boot</groupId><artifactId>spring-boot-maven-plugin</artifactId><version>${spring-boot.version}</version></plugin></plugins></build>
+            """.formatted(groupId));
+    }
+
+    private static void writeModulePom(Path root, String groupId, String module, String content) throws IOException {
+        Files.createDirectories(root.resolve(module));
+        Files.writeString(root.resolve(module).resolve("pom.xml"), """
+            <project xmlns="http://maven.apache.org/POM/4.0.0">
+                <parent><groupId>%s</groupId><artifactId>travel-agency</artifactId></parent>
+                <artifactId>%s</artifactId>
+                %s
+            </project>
+            """.formatted(groupId, module, content));
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.RandomSupplier;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+class FaultProfileTest {
+
+    @Test
+    void profile_without_random_behavior_does_not_draw_a_seed() {
+        RandomSupplier random = bound -> {
+            throw new AssertionError("No draw expected");
+        };
+
+        Assertions.assertThat(FaultProfile.NONE.seededBy(random)).isSameAs(FaultProfile.NONE);
+        Assertions.assertThat(FaultProfile.delay(300L, 0L).seededBy(random)).isEqualTo(FaultProfile.delay(300L, 0L));
+    }
+
+    @Test
+    void same_seed_draws_the_same_faults_and_delays() {
+        FaultProfile first = new FaultProfile(10L, 50L, 0.2D, 0.2D, 0L).seededBy(RandomSupplier.of(new Random(7L)));
+        FaultProfile second = new FaultProfile(10L, 50L, 0.2D, 0.2D, 0L).seededBy(RandomSupplier.of(new Random(7L)));
+
+        for (String country : List.of("France", "Belgium", "Fiji")) {
+            for (int attempt = 0; attempt < 5; attempt++) {
+                Assertions.assertThat(first.drawFault(country, attempt)).isEqualTo(second.drawFault(country, attempt));
+                Assertions.assertThat(first.drawDelayMillis(country, attempt)).isEqualTo(second.drawDelayMillis(country, attempt));
+            }
+        }
+    }
+
+    @Test
+    void draws_do_not_depend_on_country_case() {
+        FaultProfile profile = new FaultProfile(0L, 50L, 0.5D, 0D, 42L);
+
+        for (int attempt = 0; attempt < 5; attempt++) {
+            Assertions.assertThat(profile.drawFault("france", attempt)).isEqualTo(profile.drawFault("FRANCE", attempt));
+            Assertions.assertThat(profile.drawDelayMillis("france", attempt)).isEqualTo(profile.drawDelayMillis("France", attempt));
+        }
+    }
+
+    @Test
+    void delay_is_within_the_jitter() {
+        FaultProfile profile = new FaultProfile(100L, 20L, 0D, 0D, 42L);
+
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Assertions.assertThat(profile.drawDelayMillis("Benin", attempt)).isBetween(100L, 120L);
+        }
+    }
+
+    @Test
+    void fault_is_always_followed_by_a_proper_response() {
+        FaultProfile profile = FaultProfile.serverErrors(0.9D).seededBy(RandomSupplier.of(new Random(3L)));
+
+        for (String country : List.of("France", "Belgium", "Fiji", "Gabon", "Brazil")) {
+            List<FaultProfile.Fault> faults = new ArrayList<>();
+            for (int attempt = 0; attempt < 10; attempt++) {
+                faults.add(profile.drawFault(country, attempt));
+            }
+            for (int attempt = 1; attempt < faults.size(); attempt++) {
+                if (faults.get(attempt - 1) != FaultProfile.Fault.NONE) {
+                    Assertions.assertThat(faults.get(attempt)).isEqualTo(FaultProfile.Fault.NONE);
+                }
+            }
+        }
+    }
+
+    @Test
+    void first_attempts_are_faulty_at_about_the_given_rate() {
+        FaultProfile serverErrors = FaultProfile.serverErrors(0.3D).seededBy(RandomSupplier.of(new Random(11L)));
+        FaultProfile connectionDrops = FaultProfile.connectionDrops(0.3D).seededBy(RandomSupplier.of(new Random(11L)));
+        int serverErrorCount = 0;
+        int connectionDropCount = 0;
+
+        for (int i = 0; i < 2_000; i++) {
+            String country = "country-" + i;
+            if (serverErrors.drawFault(country, 0) == FaultProfile.Fault.SERVER_ERROR) {
+                serverErrorCount++;
+            }
+            if (connectionDrops.drawFault(country, 0) == FaultProfile.Fault.CONNECTION_DROP) {
+                connectionDropCount++;
+            }
+        }
+
+        Assertions.assertThat(serverErrorCount).isBetween(500, 700);
+        Assertions.assertThat(connectionDropCount).isBetween(500, 700);
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
+import com.github.lernejo.korekto.grader.travel_agency.TravelAgencyApiClient;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+class InscriptionGeneratorTest {
+
+    private static final List<String> COUNTRIES = List.of(
+        "France", "Brazil", "Japan", "Canada", "Kenya", "Norway", "Chile", "Egypt", "India", "Peru", "Spain", "Mali", "Iceland");
+
+    private final InscriptionGenerator generator = new InscriptionGenerator(42L, COUNTRIES);
+
+    @Test
+    void expected_countries_are_the_ones_a_site_would_match_from_the_stub_temperatures() {
+        Function<String, Optional<PredictionApiClient.Prediction>> predictions = generator.predictionFunction();
+
+        generator.stream().limit(500).forEach(generated -> {
+            TravelAgencyApiClient.Inscription inscription = generated.inscription();
+            double userTemperature = averageTemperature(predictions, inscription.userCountry());
+            Set<String> matching = COUNTRIES.stream()
+                .map(country -> country.toLowerCase(Locale.ROOT))
+                .filter(country -> !country.equals(inscription.userCountry()))
+                .filter(country -> {
+                    double difference = averageTemperature(predictions, country) - userTemperature;
+                    return inscription.weatherExpectation() == TravelAgencyApiClient.WeatherExpectation.WARMER
+                        ? difference > inscription.minimumTemperatureDistance()
+                        : -difference > inscription.minimumTemperatureDistance();
+                })
+                .collect(Collectors.toSet());
+
+            Assertions.assertThat(generated.expectedMatchingCountries()).as(inscription.toString()).isEqualTo(matching);
+        });
+    }
+
+    @Test
+    void no_country_sits_on_the_boundary_of_an_inscription() {
+        Function<String, Optional<PredictionApiClient.Prediction>> predictions = generator.predictionFunction();
+
+        generator.stream().limit(500).forEach(generated -> {
+            TravelAgencyApiClient.Inscription inscription = generated.inscription();
+            double userTemperature = averageTemperature(predictions, inscription.userCountry());
+            for (String country : COUNTRIES) {
+                double distance = Math.abs(averageTemperature(predictions, country) - userTemperature);
+                Assertions.assertThat(distance).isNotEqualTo((double) inscription.minimumTemperatureDistance());
+            }
+        });
+    }
+
+    @Test
+    void inscriptions_go_through_every_country_expectation_and_distance() {
+        int combinations = COUNTRIES.size() * 2 * 6;
+
+        Set<String> seen = generator.stream()
+            .limit(combinations)
+            .map(InscriptionGenerator.GeneratedInscription::inscription)
+            .map(inscription -> inscription.userCountry() + '/' + inscription.weatherExpectation() + '/' + inscription.minimumTemperatureDistance())
+            .collect(Collectors.toSet());
+
+        Assertions.assertThat(seen).hasSize(combinations);
+    }
+
+    @Test
+    void same_seed_generates_the_same_inscriptions() {
+        List<InscriptionGenerator.GeneratedInscription> first = generator.stream().limit(50).toList();
+        List<InscriptionGenerator.GeneratedInscription> second = new InscriptionGenerator(42L, COUNTRIES).stream().limit(50).toList();
+
+        Assertions.assertThat(second).isEqualTo(first);
+    }
+
+    @Test
+    void user_names_are_unique() {
+        Set<String> userNames = new HashSet<>();
+
+        generator.stream().limit(1_000).forEach(generated -> userNames.add(generated.inscription().userName()));
+
+        Assertions.assertThat(userNames).hasSize(1_000);
+    }
+
+    @Test
+    void unknown_country_has_no_prediction() {
+        Assertions.assertThat(generator.predictionFunction().apply("Atlantis")).isEmpty();
+        Assertions.assertThat(generator.predictionFunction().apply("FRANCE")).isPresent();
+    }
+
+    private static double averageTemperature(Function<String, Optional<PredictionApiClient.Prediction>> predictions, String country) {
+        return predictions.apply(country).orElseThrow().temperatures().stream()
+            .mapToDouble(PredictionApiClient.TempPoint::temperature)
+            .average()
+            .orElseThrow();
+    }
+}
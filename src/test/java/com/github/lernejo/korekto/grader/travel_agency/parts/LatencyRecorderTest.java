@@ -0,0 +1,116 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class LatencyRecorderTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    void percentiles_are_nearest_ranks_whatever_the_recording_order() {
+        List<Long> latencies = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            latencies.add(i * MILLIS);
+        }
+        Collections.shuffle(latencies);
+        LatencyRecorder recorder = new LatencyRecorder(latencies.size());
+        latencies.forEach(recorder::record);
+
+        LatencyRecorder.Distribution distribution = recorder.distribution();
+
+        Assertions.assertThat(distribution.p50()).isEqualTo(50D);
+        Assertions.assertThat(distribution.p95()).isEqualTo(95D);
+        Assertions.assertThat(distribution.p99()).isEqualTo(99D);
+    }
+
+    @Test
+    void single_latency_is_every_percentile() {
+        LatencyRecorder recorder = new LatencyRecorder(1);
+        recorder.record(1_500_000L);
+
+        Assertions.assertThat(recorder.distribution()).isEqualTo(new LatencyRecorder.Distribution(1.5D, 1.5D, 1.5D));
+    }
+
+    @Test
+    void slowest_latency_is_the_p99_of_a_small_sample() {
+        LatencyRecorder recorder = new LatencyRecorder(10);
+        for (long i = 1; i <= 10; i++) {
+            recorder.record(i * MILLIS);
+        }
+
+        LatencyRecorder.Distribution distribution = recorder.distribution();
+
+        Assertions.assertThat(distribution.p50()).isEqualTo(5D);
+        Assertions.assertThat(distribution.p95()).isEqualTo(10D);
+        Assertions.assertThat(distribution.p99()).isEqualTo(10D);
+    }
+
+    @Test
+    void distribution_only_covers_recorded_latencies() {
+        LatencyRecorder recorder = new LatencyRecorder(10);
+        recorder.record(4 * MILLIS);
+        recorder.record(2 * MILLIS);
+
+        LatencyRecorder.Distribution distribution = recorder.distribution();
+
+        Assertions.assertThat(distribution.p50()).isEqualTo(2D);
+        Assertions.assertThat(distribution.p99()).isEqualTo(4D);
+    }
+
+    @Test
+    void latencies_beyond_the_capacity_are_ignored() {
+        LatencyRecorder recorder = new LatencyRecorder(2);
+        recorder.record(MILLIS);
+        recorder.record(2 * MILLIS);
+        recorder.record(1_000 * MILLIS);
+
+        Assertions.assertThat(recorder.distribution().p99()).isEqualTo(2D);
+    }
+
+    @Test
+    void empty_recorder_has_a_zero_distribution() {
+        Assertions.assertThat(new LatencyRecorder(3).distribution()).isEqualTo(new LatencyRecorder.Distribution(0D, 0D, 0D));
+    }
+
+    @Test
+    void concurrent_recordings_are_all_kept() throws Exception {
+        int threads = 8;
+        int perThread = 1_000;
+        LatencyRecorder recorder = new LatencyRecorder(threads * perThread);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> recordings = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                recordings.add(executor.submit(() -> {
+                    start.await();
+                    for (long i = 1; i <= perThread; i++) {
+                        recorder.record(i * MILLIS);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> recording : recordings) {
+                recording.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LatencyRecorder.Distribution distribution = recorder.distribution();
+
+        Assertions.assertThat(distribution.p50()).isEqualTo(500D);
+        Assertions.assertThat(distribution.p99()).isEqualTo(990D);
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MavenRunnerTest {
+
+    @Test
+    void goals_are_split_on_whitespaces() {
+        Assertions.assertThat(MavenRunner.tokenize("  clean \t install  ")).containsExactly("clean", "install");
+    }
+
+    @Test
+    void quoted_option_values_are_kept_whole_without_their_quotes() {
+        Assertions.assertThat(MavenRunner.tokenize("-Dmaven.repo.local='/var/cache/maven repo' -Dmessage=\"it's built\" verify"))
+            .containsExactly("-Dmaven.repo.local=/var/cache/maven repo", "-Dmessage=it's built", "verify");
+    }
+
+    @Test
+    void empty_quotes_are_an_empty_token() {
+        Assertions.assertThat(MavenRunner.tokenize("-Dskip='' test")).containsExactly("-Dskip=", "test");
+        Assertions.assertThat(MavenRunner.tokenize("'' test")).containsExactly("", "test");
+    }
+
+    @Test
+    void blank_goal_has_no_token() {
+        Assertions.assertThat(MavenRunner.tokenize(" ")).isEmpty();
+    }
+}
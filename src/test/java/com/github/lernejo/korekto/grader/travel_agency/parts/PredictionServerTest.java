@@ -0,0 +1,145 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import com.github.lernejo.korekto.grader.travel_agency.PredictionApiClient;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+class PredictionServerTest {
+
+    private static final int LARGE_HISTORY_SIZE = 3_000;
+
+    private int port;
+    private PredictionServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Function<String, Optional<PredictionApiClient.Prediction>> predictions = country -> switch (country) {
+            case "France" -> Optional.of(prediction(country, 2));
+            case "Brazil" -> Optional.of(prediction(country, LARGE_HISTORY_SIZE));
+            default -> Optional.empty();
+        };
+        server = new PredictionServer(port, predictions);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void small_response_has_a_content_length() throws IOException {
+        HttpURLConnection connection = get("France", null);
+
+        byte[] body = read(connection);
+
+        Assertions.assertThat(connection.getResponseCode()).isEqualTo(200);
+        Assertions.assertThat(connection.getHeaderField("Content-Length")).isEqualTo(String.valueOf(body.length));
+        Assertions.assertThat(connection.getHeaderField("Transfer-Encoding")).isNull();
+        Assertions.assertThat(connection.getHeaderField("Content-Encoding")).isNull();
+        Assertions.assertThat(new String(body, StandardCharsets.UTF_8)).startsWith("{\"country\":\"France\",\"temperatures\":[");
+    }
+
+    @Test
+    void response_above_the_threshold_is_chunked() throws IOException {
+        HttpURLConnection connection = get("Brazil", null);
+
+        byte[] body = read(connection);
+
+        Assertions.assertThat(body.length).isGreaterThan(64 * 1024);
+        Assertions.assertThat(connection.getHeaderField("Transfer-Encoding")).isEqualTo("chunked");
+        Assertions.assertThat(connection.getHeaderField("Content-Length")).isNull();
+    }
+
+    @Test
+    void response_is_gzipped_for_clients_accepting_it() throws IOException {
+        byte[] identityBody = read(get("Brazil", null));
+        HttpURLConnection connection = get("Brazil", "deflate, gzip;q=0.8");
+
+        byte[] gzippedBody = read(connection);
+
+        Assertions.assertThat(connection.getHeaderField("Content-Encoding")).isEqualTo("gzip");
+        Assertions.assertThat(connection.getHeaderField("Vary")).isEqualTo("Accept-Encoding");
+        Assertions.assertThat(gzippedBody.length).isLessThan(identityBody.length);
+        try (InputStream gunzipped = new GZIPInputStream(new ByteArrayInputStream(gzippedBody))) {
+            Assertions.assertThat(gunzipped.readAllBytes()).isEqualTo(identityBody);
+        }
+    }
+
+    @Test
+    void response_is_not_gzipped_for_clients_refusing_it() throws IOException {
+        HttpURLConnection connection = get("France", "gzip;q=0, identity");
+
+        read(connection);
+
+        Assertions.assertThat(connection.getHeaderField("Content-Encoding")).isNull();
+    }
+
+    @Test
+    void streamed_history_dates_stay_within_the_last_year() throws IOException {
+        server.useScenario(country -> Optional.of(prediction(country, 2)), FaultProfile.NONE, 1_000);
+
+        String body = new String(read(get("France", null)), StandardCharsets.UTF_8);
+
+        Matcher dates = Pattern.compile("\"date\":\"([^\"]+)\"").matcher(body);
+        LocalDate today = LocalDate.now();
+        int count = 0;
+        while (dates.find()) {
+            Assertions.assertThat(LocalDate.parse(dates.group(1))).isBetween(today.minusDays(364), today);
+            count++;
+        }
+        Assertions.assertThat(count).isEqualTo(1_000);
+    }
+
+    @Test
+    void unknown_country_is_not_found_without_body() throws IOException {
+        HttpURLConnection connection = get("Atlantis", null);
+
+        Assertions.assertThat(connection.getResponseCode()).isEqualTo(404);
+        try (InputStream errorStream = connection.getErrorStream()) {
+            Assertions.assertThat(errorStream == null ? new byte[0] : errorStream.readAllBytes()).isEmpty();
+        }
+    }
+
+    private HttpURLConnection get(String country, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/api/temperature?country=" + country).openConnection();
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        return connection;
+    }
+
+    private static byte[] read(HttpURLConnection connection) throws IOException {
+        try (InputStream body = connection.getInputStream()) {
+            return body.readAllBytes();
+        }
+    }
+
+    private static PredictionApiClient.Prediction prediction(String country, int size) {
+        List<PredictionApiClient.TempPoint> temperatures = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            temperatures.add(new PredictionApiClient.TempPoint("2021-12-" + (10 + i % 20), 20.5D + i % 7));
+        }
+        return new PredictionApiClient.Prediction(country, temperatures);
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.lernejo.korekto.grader.travel_agency.parts;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalLong;
+
+class ProcessServerHandleTest {
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @Test
+    void peak_resident_memory_of_a_running_process_is_measured_on_linux() throws IOException {
+        ProcessServerHandle handle = new ProcessServerHandle(0, new ProcessBuilder("sleep", "30").start(), temporaryDirectory.resolve("server.log"));
+        try {
+            OptionalLong peakResidentBytes = handle.peakResidentBytes();
+
+            if (Files.isDirectory(Path.of("/proc/self"))) {
+                Assertions.assertThat(peakResidentBytes.isPresent()).isTrue();
+                Assertions.assertThat(peakResidentBytes.getAsLong()).isGreaterThan(0L);
+            } else {
+                Assertions.assertThat(peakResidentBytes.isPresent()).isFalse();
+            }
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Test
+    void peak_resident_memory_of_an_exited_process_is_unknown() throws Exception {
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        ProcessServerHandle handle = new ProcessServerHandle(0, process, temporaryDirectory.resolve("server.log"));
+
+        Assertions.assertThat(handle.peakResidentBytes().isPresent()).isFalse();
+    }
+}
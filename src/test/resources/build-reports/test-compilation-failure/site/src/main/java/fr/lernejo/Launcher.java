@@ -0,0 +1,4 @@
+package fr.lernejo;
+
+public class Launcher {
+}
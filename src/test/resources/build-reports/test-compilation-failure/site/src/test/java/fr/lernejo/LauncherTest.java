@@ -0,0 +1,7 @@
+package fr.lernejo;
+
+class LauncherTest {
+    void missing_semicolon() {
+        int i = 0
+    }
+}